@@ -31,4 +31,10 @@ public class LruActivity extends AppCompatActivity {
         });
 
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mImageLoader.cancelAll();
+    }
 }
@@ -0,0 +1,283 @@
+package com.example.feedx.image;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量加载，由 {@link ImageLoader#loadAll} 创建：按订阅方的 request(n) 从 url 序列里取，
+ * 在线程池里加载，完成一个发一个；
+ * 已开始但还没发出去的最多 maxInFlight 个；结果不进内存缓存，磁盘只写原始字节，
+ * 所以内存占用和批量大小无关；
+ * ordered 时按输入顺序发，否则谁先完成先发；
+ * 单个 url 失败不会结束整个流，而是发一个带 error 的 {@link Item}；
+ * 只能订阅一次，回调在调用 request 的线程或线程池线程上，但不会并发
+ */
+public class BatchPublisher implements ImageFlow.Publisher<BatchPublisher.Item> {
+
+    public static class Item {
+        /**
+         * 在输入序列里的位置，从 0 开始
+         */
+        public final int index;
+        public final String url;
+        /**
+         * 失败时为 null
+         */
+        public final Bitmap bitmap;
+        public final Throwable error;
+
+        Item(int index, String url, Bitmap bitmap, Throwable error) {
+            this.index = index;
+            this.url = url;
+            this.bitmap = bitmap;
+            this.error = error;
+        }
+    }
+
+    private final ImageLoader mLoader;
+    private final Iterable<String> mUrls;
+    private final int mMaxInFlight;
+    private final boolean mOrdered;
+    private final Transformation[] mTransformations;
+    private final AtomicBoolean mSubscribed = new AtomicBoolean();
+
+    BatchPublisher(ImageLoader loader, Iterable<String> urls, int maxInFlight, boolean ordered,
+                   Transformation[] transformations) {
+        mLoader = loader;
+        mUrls = urls;
+        mMaxInFlight = Math.max(1, maxInFlight);
+        mOrdered = ordered;
+        mTransformations = transformations;
+    }
+
+    @Override
+    public void subscribe(ImageFlow.Subscriber<? super Item> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+        if (!mSubscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new ImageFlow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("BatchPublisher allows only one subscriber"));
+            return;
+        }
+        BatchSubscription subscription = new BatchSubscription(subscriber, mUrls.iterator());
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    private class BatchSubscription implements ImageFlow.Subscription {
+
+        private final ImageFlow.Subscriber<? super Item> mSubscriber;
+        private final Iterator<String> mIterator;
+        /**
+         * 只有一个线程在 drain，其余的只加计数，由它再跑一轮
+         */
+        private final AtomicInteger mWip = new AtomicInteger();
+
+        /**
+         * 以下由 this 保护
+         */
+        private long mRequested;
+        private final ArrayDeque<Item> mReady = new ArrayDeque<>();
+        private final HashMap<Integer, Item> mReadyByIndex = new HashMap<>();
+        private Throwable mError;
+
+        /**
+         * 以下只在 drain 里读写
+         */
+        private int mLaunched;
+        private int mEmitted;
+        private boolean mExhausted;
+        private volatile boolean mCancelled;
+        private boolean mDone;
+
+        BatchSubscription(ImageFlow.Subscriber<? super Item> subscriber, Iterator<String> iterator) {
+            mSubscriber = subscriber;
+            mIterator = iterator;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    mError = new IllegalArgumentException("request " + n + " <= 0");
+                } else {
+                    mRequested = mRequested + n < 0 ? Long.MAX_VALUE : mRequested + n;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+            drain();
+        }
+
+        private void complete(Item item) {
+            synchronized (this) {
+                if (mOrdered) {
+                    mReadyByIndex.put(item.index, item);
+                } else {
+                    mReady.add(item);
+                }
+            }
+            drain();
+        }
+
+        void drain() {
+            if (mWip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            for (;;) {
+                if (mDone) {
+                    return;
+                }
+                if (mCancelled) {
+                    finish();
+                    return;
+                }
+                Throwable error;
+                synchronized (this) {
+                    error = mError;
+                }
+                if (error != null) {
+                    finish();
+                    mSubscriber.onError(error);
+                    return;
+                }
+                emit();
+                if (mCancelled) {
+                    finish();
+                    return;
+                }
+                launch();
+                if (mDone) {
+                    return;
+                }
+                if (mExhausted && mLaunched == mEmitted) {
+                    finish();
+                    mSubscriber.onComplete();
+                    return;
+                }
+                missed = mWip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 在需求范围内把已完成的发出去
+         */
+        private void emit() {
+            for (;;) {
+                Item item;
+                synchronized (this) {
+                    if (mRequested == 0) {
+                        return;
+                    }
+                    item = mOrdered ? mReadyByIndex.remove(mEmitted) : mReady.poll();
+                    if (item == null) {
+                        return;
+                    }
+                    if (mRequested != Long.MAX_VALUE) {
+                        mRequested--;
+                    }
+                }
+                mEmitted++;
+                mSubscriber.onNext(item);
+                if (mCancelled) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 已开始未发出的个数同时受 maxInFlight 和剩余需求限制
+         */
+        private void launch() {
+            for (;;) {
+                int outstanding = mLaunched - mEmitted;
+                boolean allowed;
+                synchronized (this) {
+                    allowed = outstanding < mMaxInFlight && outstanding < mRequested;
+                }
+                if (!allowed && outstanding > 0) {
+                    return;
+                }
+                String url;
+                try {
+                    // 全部发完时即使没有需求也要看一下是否结束，好及时 onComplete
+                    if (mExhausted || !mIterator.hasNext()) {
+                        mExhausted = true;
+                        return;
+                    }
+                    if (!allowed) {
+                        return;
+                    }
+                    url = mIterator.next();
+                } catch (RuntimeException e) {
+                    finish();
+                    mSubscriber.onError(e);
+                    return;
+                } catch (Error e) {
+                    // 流先正常结束，订阅方不会一直等，再照常抛出
+                    finish();
+                    mSubscriber.onError(e);
+                    throw e;
+                }
+                load(mLaunched++, url);
+            }
+        }
+
+        private void load(final int index, final String url) {
+            mLoader.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (mCancelled) {
+                        return;
+                    }
+                    Bitmap bitmap = null;
+                    Throwable error = null;
+                    try {
+                        bitmap = mLoader.loadUnretained(url, mTransformations);
+                        if (bitmap == null) {
+                            error = new IOException("decode failed: " + url);
+                        }
+                    } catch (Exception e) {
+                        error = e;
+                    } catch (Error e) {
+                        // 如解码 OOM：这一项按失败发出，流照常继续，再抛给线程池
+                        complete(new Item(index, url, null, e));
+                        throw e;
+                    }
+                    complete(new Item(index, url, bitmap, error));
+                }
+            });
+        }
+
+        private void finish() {
+            mDone = true;
+            synchronized (this) {
+                mReady.clear();
+                mReadyByIndex.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.feedx.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.example.feedx.pool.Scratch;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Android 的 {@link ImageCodec}：BitmapFactory 解码，编码格式见 {@link ImgUtil#setEncodeFormat}；
+ * 整图解码先读尺寸，超过 {@link #setMaxPixels} 的按 2 的幂采样，超大图（长图、全景）不会整张解进内存，
+ * 要看清细节用 {@link TiledImage}
+ */
+public class BitmapCodec implements ImageCodec<Bitmap> {
+
+    public static final BitmapCodec INSTANCE = new BitmapCodec();
+
+    /**
+     * 默认解出来不超过堆的 1/8（ARGB_8888 每像素 4 字节）
+     */
+    private static volatile long sMaxPixels = Runtime.getRuntime().maxMemory() / 8 / 4;
+
+    public static void setMaxPixels(long maxPixels) {
+        sMaxPixels = maxPixels;
+    }
+
+    /**
+     * 工作线程上用线程的 inTempStorage，省掉每次解码分配的 16KB
+     */
+    static BitmapFactory.Options decodeOptions() {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        Scratch scratch = Scratch.current();
+        if (scratch != null) {
+            options.inTempStorage = scratch.tempStorage();
+        }
+        return options;
+    }
+
+    /**
+     * 解出来不超过像素上限的最小采样率；读不到尺寸时为 1
+     */
+    static int sampleSizeFor(int width, int height) {
+        int sampleSize = 1;
+        while (width > 0 && height > 0 && (long) (width / sampleSize) * (height / sampleSize) > sMaxPixels) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    @Override
+    public Bitmap decode(byte[] data, int offset, int length) {
+        BitmapFactory.Options options = decodeOptions();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, offset, length, options);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSizeFor(options.outWidth, options.outHeight);
+        return BitmapFactory.decodeByteArray(data, offset, length, options);
+    }
+
+    /**
+     * 磁盘缓存的条目，同样受像素上限约束；文件流先用 fd 读尺寸，fd 的位置不变
+     */
+    static Bitmap decodeStream(InputStream is) throws IOException {
+        BitmapFactory.Options options = decodeOptions();
+        if (is instanceof FileInputStream) {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFileDescriptor(((FileInputStream) is).getFD(), null, options);
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSizeFor(options.outWidth, options.outHeight);
+        }
+        return BitmapFactory.decodeStream(is, null, options);
+    }
+
+    @Override
+    public byte[] encode(Bitmap image) {
+        return ImgUtil.bitmap2Bytes(image);
+    }
+
+    @Override
+    public int sizeOf(Bitmap image) {
+        return image.getRowBytes() * image.getHeight();
+    }
+}
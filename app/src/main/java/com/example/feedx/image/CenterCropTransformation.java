@@ -0,0 +1,40 @@
+package com.example.feedx.image;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+
+/**
+ * 等比缩放到铺满目标尺寸，再居中裁掉多余部分
+ */
+public class CenterCropTransformation implements Transformation {
+
+    private final int mWidth;
+    private final int mHeight;
+
+    public CenterCropTransformation(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    @Override
+    public Bitmap transform(Bitmap source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width == mWidth && height == mHeight) {
+            return source;
+        }
+        float scale = Math.max((float) mWidth / width, (float) mHeight / height);
+        // 缩放后的图中，目标区域对应原图的大小
+        int cropWidth = Math.min(width, Math.round(mWidth / scale));
+        int cropHeight = Math.min(height, Math.round(mHeight / scale));
+        Matrix matrix = new Matrix();
+        matrix.setScale((float) mWidth / cropWidth, (float) mHeight / cropHeight);
+        return Bitmap.createBitmap(source, (width - cropWidth) / 2, (height - cropHeight) / 2,
+                cropWidth, cropHeight, matrix, true);
+    }
+
+    @Override
+    public String key() {
+        return "centerCrop(" + mWidth + "x" + mHeight + ")";
+    }
+}
@@ -0,0 +1,508 @@
+package com.example.feedx.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.example.feedx.pool.OpenGate;
+import com.jakewharton.disklrucache.DiskLruCache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 按内容寻址的磁盘缓存，
+ * 图片字节按内容 hash 存一份（blob），上面再挂一层 url -> 内容 的索引，
+ * 不同 url 指向同一张图时磁盘只占一份，引用计数归零才删除 blob；
+ * 超出容量时按 url 的 LRU 顺序淘汰索引，blob 随引用计数归零释放，DiskLruCache 自己不淘汰；
+ * 和 {@link DiskCache} 一样在单独线程打开，读写先等打开完成
+ */
+public class ContentDiskCache implements DiskImageCache<Bitmap> {
+
+    private static final String INDEX_FILE = "index.journal";
+    private static final String OP_PUT = "P";
+    private static final String OP_REMOVE = "R";
+    private static final long DEFAULT_MAX_SIZE = 10 * 1024 * 1024;
+    /**
+     * 索引日志里冗余的记录超过这么多条、且多于有效条目时重写日志，同 DiskLruCache 的 journal
+     */
+    private static final int INDEX_COMPACT_THRESHOLD = 2000;
+
+    volatile DiskLruCache mBlobCache;
+
+    private final long mMaxSize;
+    private final CountDownLatch mOpened = new CountDownLatch(1);
+    private final OpenGate mGate = new OpenGate();
+    private File mIndexFile;
+    private BufferedWriter mIndexWriter;
+    /**
+     * 索引日志的行数，由 this 保护
+     */
+    private int mIndexLines;
+    /**
+     * url key -> 内容 key，按访问顺序，淘汰从最久没用的开始
+     */
+    private final LinkedHashMap<String, String> mUrlIndex = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * 内容 key -> 引用它的 url 数
+     */
+    private final HashMap<String, Integer> mRefCount = new HashMap<>();
+    /**
+     * 已写到磁盘的 blob 大小，mSize 是它们的和
+     */
+    private final HashMap<String, Long> mBlobSizes = new HashMap<>();
+    private long mSize;
+    /**
+     * 已解码的图片，弱引用，只要其他地方（如内存缓存的另一个 url）还持有，就不用再解码
+     */
+    private final SizedLruCache<String, WeakReference<Bitmap>> mDecoded = new SizedLruCache<>(256);
+
+    public ContentDiskCache(Context context) {
+        this(DiskCache.getDiskCacheDir(context, "image_content"), ImgUtil.getAppVersion(context), DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * 打开 blob 缓存、回放索引日志放到单独线程，不占调用方（一般是主线程）
+     */
+    public ContentDiskCache(final File cacheDir, final int appVersion, long maxSize) {
+        mMaxSize = maxSize;
+        Thread opener = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    open(cacheDir, appVersion);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    mBlobCache = null;
+                } finally {
+                    mOpened.countDown();
+                    mGate.open();
+                }
+            }
+        }, "ContentDiskCache-open");
+        opener.setPriority(Thread.NORM_PRIORITY - 1);
+        opener.start();
+    }
+
+    private void open(File cacheDir, int appVersion) throws IOException {
+        if (!cacheDir.exists()) {
+            cacheDir.mkdir();
+        }
+        // 容量由这里按引用计数管，DiskLruCache 不能自己删还有 url 指着的 blob
+        mBlobCache = DiskLruCache.open(cacheDir, appVersion, 1, Long.MAX_VALUE);
+        mIndexFile = new File(cacheDir, INDEX_FILE);
+        synchronized (this) {
+            readIndex(cacheDir);
+            deleteOrphans(cacheDir);
+            trimToSize();
+            rebuildIndex();
+        }
+    }
+
+    /**
+     * 等待打开完成，打开失败返回 null
+     */
+    private DiskLruCache awaitOpen() {
+        try {
+            mOpened.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return mBlobCache;
+    }
+
+    @Override
+    public Bitmap get(String url) {
+        DiskLruCache blobCache = awaitOpen();
+        if (blobCache == null) {
+            return null;
+        }
+        String urlKey = ImgUtil.hashKeyForDisk(url);
+        String contentKey;
+        synchronized (this) {
+            contentKey = mUrlIndex.get(urlKey);
+        }
+        if (contentKey == null) {
+            return null;
+        }
+        WeakReference<Bitmap> ref = mDecoded.get(contentKey);
+        Bitmap bitmap = ref != null ? ref.get() : null;
+        if (bitmap != null) {
+            // 同一内容已在内存中，跳过解码
+            return bitmap;
+        }
+        try {
+            DiskLruCache.Snapshot snapShot = blobCache.get(contentKey);
+            if (snapShot == null) {
+                // blob 已被 LRU 淘汰，索引失效
+                remove(url);
+                return null;
+            }
+            InputStream is = snapShot.getInputStream(0);
+            bitmap = BitmapCodec.decodeStream(is);
+            snapShot.close();
+            if (bitmap != null) {
+                mDecoded.put(contentKey, new WeakReference<>(bitmap));
+            }
+            return bitmap;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 不记录校验信息，条目不会过期
+     */
+    @Override
+    public Bitmap get(String url, OnStaleListener onStale, ImageEventListener events) {
+        return get(url);
+    }
+
+    /**
+     * 只查索引，不解码
+     */
+    @Override
+    public boolean contains(String url) {
+        if (awaitOpen() == null) {
+            return false;
+        }
+        synchronized (this) {
+            return mUrlIndex.containsKey(ImgUtil.hashKeyForDisk(url));
+        }
+    }
+
+    @Override
+    public InputStream openStream(String url) throws IOException {
+        DiskLruCache blobCache = awaitOpen();
+        if (blobCache == null) {
+            return null;
+        }
+        String contentKey;
+        synchronized (this) {
+            contentKey = mUrlIndex.get(ImgUtil.hashKeyForDisk(url));
+        }
+        if (contentKey == null) {
+            return null;
+        }
+        DiskLruCache.Snapshot snapShot = blobCache.get(contentKey);
+        return snapShot != null ? snapShot.getInputStream(0) : null;
+    }
+
+    @Override
+    public void executeWhenOpen(Runnable r) {
+        mGate.execute(r);
+    }
+
+    /**
+     * 没有原始字节时才用，重新编码的字节和网络上的不同，去不了重；有原始字节用 {@link #putBytes}
+     */
+    @Override
+    public void put(final String url, final Bitmap bmp) {
+        executeWhenOpen(new Runnable() {
+            @Override
+            public void run() {
+                putBytes(url, ImgUtil.bitmap2Bytes(bmp));
+            }
+        });
+    }
+
+    /**
+     * 有原始字节时存字节，不同 url 的同一张图才能去重；没有时按源图类型编码，meta 不记录
+     */
+    @Override
+    public void put(final String url, final Bitmap bmp, HttpMeta meta, final byte[] data, final String contentType) {
+        executeWhenOpen(new Runnable() {
+            @Override
+            public void run() {
+                putBytes(url, data != null ? data : ImgUtil.bitmap2Bytes(bmp, contentType));
+            }
+        });
+    }
+
+    @Override
+    public void putBytes(String url, byte[] data, HttpMeta meta) {
+        putBytes(url, data);
+    }
+
+    /**
+     * 直接按原始字节存，内容 hash 按这些字节算，需在工作线程调用
+     */
+    public void putBytes(String url, byte[] data) {
+        if (awaitOpen() == null) {
+            return;
+        }
+        String urlKey = ImgUtil.hashKeyForDisk(url);
+        String contentKey = ImgUtil.hashKeyForContent(data);
+        try {
+            if (!retain(urlKey, contentKey)) {
+                return;
+            }
+            DiskLruCache.Snapshot snapShot = mBlobCache.get(contentKey);
+            if (snapShot != null) {
+                // 内容已存在，只记索引
+                snapShot.close();
+                return;
+            }
+            DiskLruCache.Editor editor = mBlobCache.edit(contentKey);
+            if (editor == null) {
+                // 另一个线程正在写同一内容
+                return;
+            }
+            OutputStream ops = editor.newOutputStream(0);
+            try {
+                ops.write(data);
+                ops.close();
+                editor.commit();
+            } catch (IOException e) {
+                editor.abort();
+                throw e;
+            }
+            onBlobWritten(contentKey, data.length);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            flushIndex();
+        }
+    }
+
+    @Override
+    public void updateMeta(String url, HttpMeta meta) {
+    }
+
+    public void remove(String url) {
+        if (awaitOpen() == null) {
+            return;
+        }
+        String urlKey = ImgUtil.hashKeyForDisk(url);
+        synchronized (this) {
+            String contentKey = mUrlIndex.remove(urlKey);
+            if (contentKey == null) {
+                return;
+            }
+            appendIndex(OP_REMOVE, urlKey, null);
+            release(contentKey);
+            flushIndex();
+        }
+    }
+
+    /**
+     * blob 写完后计入容量并按需淘汰；写的过程中引用已经全部释放的，blob 没人要了直接删
+     */
+    private synchronized void onBlobWritten(String contentKey, long size) throws IOException {
+        if (!mRefCount.containsKey(contentKey)) {
+            mBlobCache.remove(contentKey);
+            return;
+        }
+        Long old = mBlobSizes.put(contentKey, size);
+        mSize += size - (old != null ? old : 0);
+        trimToSize();
+    }
+
+    /**
+     * 从最久没用的 url 开始去掉索引，直到 blob 总大小不超过容量；
+     * 共享的 blob 要等所有 url 都被淘汰才释放，需持有 this 锁
+     */
+    private void trimToSize() {
+        Iterator<Map.Entry<String, String>> it = mUrlIndex.entrySet().iterator();
+        while (mSize > mMaxSize && it.hasNext()) {
+            Map.Entry<String, String> eldest = it.next();
+            it.remove();
+            appendIndex(OP_REMOVE, eldest.getKey(), null);
+            release(eldest.getValue());
+        }
+    }
+
+    /**
+     * 记录 url -> 内容，返回 false 表示索引未变化
+     */
+    private synchronized boolean retain(String urlKey, String contentKey) {
+        String old = mUrlIndex.put(urlKey, contentKey);
+        if (contentKey.equals(old)) {
+            return false;
+        }
+        if (old != null) {
+            release(old);
+        }
+        Integer count = mRefCount.get(contentKey);
+        mRefCount.put(contentKey, count == null ? 1 : count + 1);
+        appendIndex(OP_PUT, urlKey, contentKey);
+        return true;
+    }
+
+    /**
+     * 引用计数减一，归零则删除 blob，需持有 this 锁
+     */
+    private void release(String contentKey) {
+        Integer count = mRefCount.get(contentKey);
+        if (count == null || count <= 1) {
+            mRefCount.remove(contentKey);
+            mDecoded.remove(contentKey);
+            Long size = mBlobSizes.remove(contentKey);
+            if (size != null) {
+                mSize -= size;
+            }
+            try {
+                mBlobCache.remove(contentKey);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            mRefCount.put(contentKey, count - 1);
+        }
+    }
+
+    private void appendIndex(String op, String urlKey, String contentKey) {
+        if (mIndexWriter == null) {
+            return;
+        }
+        try {
+            mIndexWriter.write(op + " " + urlKey + (contentKey != null ? " " + contentKey : "") + "\n");
+            mIndexLines++;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 每次 put / remove 结束时写出，进程被杀最多丢正在进行的那一条；
+     * 日志只追加，冗余记录多了就按当前索引重写，不等下次打开
+     */
+    private synchronized void flushIndex() {
+        if (mIndexWriter == null) {
+            return;
+        }
+        try {
+            int redundant = mIndexLines - mUrlIndex.size();
+            if (redundant >= INDEX_COMPACT_THRESHOLD && redundant >= mUrlIndex.size()) {
+                rebuildIndex();
+            } else {
+                mIndexWriter.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 回放索引日志，blob 已不存在的条目直接丢弃
+     */
+    private void readIndex(File cacheDir) {
+        if (!mIndexFile.exists()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(mIndexFile));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (OP_PUT.equals(parts[0]) && parts.length == 3) {
+                    mUrlIndex.put(parts[1], parts[2]);
+                } else if (OP_REMOVE.equals(parts[0]) && parts.length == 2) {
+                    mUrlIndex.remove(parts[1]);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        // DiskLruCache 的 clean 文件名为 key.0
+        for (Iterator<Map.Entry<String, String>> it = mUrlIndex.entrySet().iterator(); it.hasNext(); ) {
+            String contentKey = it.next().getValue();
+            File blob = new File(cacheDir, contentKey + ".0");
+            if (!blob.exists()) {
+                it.remove();
+                continue;
+            }
+            Integer count = mRefCount.get(contentKey);
+            mRefCount.put(contentKey, count == null ? 1 : count + 1);
+            if (count == null) {
+                mBlobSizes.put(contentKey, blob.length());
+                mSize += blob.length();
+            }
+        }
+    }
+
+    /**
+     * 删掉没有 url 引用的 blob，如写完 blob 后索引还没落盘进程就被杀了
+     */
+    private void deleteOrphans(File cacheDir) throws IOException {
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".0")) {
+                String contentKey = name.substring(0, name.length() - 2);
+                if (!mRefCount.containsKey(contentKey)) {
+                    mBlobCache.remove(contentKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按当前索引重写日志，去掉冗余记录，需持有 this 锁
+     */
+    private void rebuildIndex() throws IOException {
+        if (mIndexWriter != null) {
+            mIndexWriter.close();
+            mIndexWriter = null;
+        }
+        File tmp = new File(mIndexFile.getPath() + ".tmp");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(tmp));
+        try {
+            for (Map.Entry<String, String> entry : mUrlIndex.entrySet()) {
+                writer.write(OP_PUT + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(mIndexFile)) {
+            throw new IOException("rename index failed");
+        }
+        mIndexWriter = new BufferedWriter(new FileWriter(mIndexFile, true));
+        mIndexLines = mUrlIndex.size();
+    }
+
+    /**
+     * 将缓存记录同步到journal文件
+     */
+    public void flush() {
+        if (awaitOpen() == null) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                if (mIndexWriter != null) {
+                    mIndexWriter.flush();
+                }
+            }
+            if (mBlobCache != null) {
+                mBlobCache.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
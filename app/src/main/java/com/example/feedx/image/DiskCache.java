@@ -2,42 +2,193 @@ package com.example.feedx.image;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Environment;
+import android.os.Looper;
 
-import com.example.feedx.pool.ThreadPoolManager;
+import com.example.feedx.pool.OpenGate;
+import com.example.feedx.pool.Scratch;
 import com.jakewharton.disklrucache.DiskLruCache;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
 
-public class DiskCache implements ImageCache {
+public class DiskCache implements DiskImageCache<Bitmap> {
 
-    DiskLruCache mDiskCache;
+    /**
+     * 每个条目两个文件：0 图片，1 http 校验信息
+     */
+    private static final int INDEX_IMAGE = 0;
+    private static final int INDEX_META = 1;
+
+    private static DiskCache sShared;
+
+    /**
+     * 默认目录的实例，全进程一个；同一目录只能有一个 DiskCache，
+     * 否则各自的 journal 和写线程会在一个目录上互相覆盖
+     */
+    public static synchronized DiskCache shared(Context context) {
+        if (sShared == null) {
+            sShared = new DiskCache(context);
+        }
+        return sShared;
+    }
+
+    /**
+     * 后台线程打开后才有值，读写都先经过 {@link #awaitOpen()}
+     */
+    private volatile DiskLruCache mDiskCache;
+
+    private final CountDownLatch mOpened = new CountDownLatch(1);
+    private final OpenGate mGate = new OpenGate();
+
+    private OnStaleListener mOnStaleListener;
+
+    private ImageEventListener mEventListener = ImageEventListener.NONE;
+
+    /**
+     * 还没写到磁盘的条目最多留多少，超过丢最老的
+     */
+    private static final int MAX_PENDING_WRITES = 32;
+    private static final int WRITE_BATCH_SIZE = 8;
+
+    /**
+     * put 先进这里，专用写线程按批写入，一批只 flush 一次 journal
+     */
+    private final WriteBehindQueue<PendingWrite> mWrites = new WriteBehindQueue<>(
+            "DiskCache-writer", MAX_PENDING_WRITES, WRITE_BATCH_SIZE,
+            new WriteBehindQueue.Sink<PendingWrite>() {
+                @Override
+                public void write(String url, PendingWrite write) {
+                    writeEntry(url, write);
+                }
 
+                @Override
+                public void endBatch() {
+                    flush();
+                }
+            });
+
+    /**
+     * 打开磁盘缓存（读 journal、查外部存储状态）放到单独线程，不占启动时的主线程；
+     * 不用线程池，避免池里的写任务反过来等它；打开后顺带建好线程池，
+     * 把打开前 {@link #executeWhenOpen} 的任务交给它；
+     * 用默认目录时取 {@link #shared(Context)}，不要再 new
+     */
     public DiskCache(Context context) {
-        try {
-            File cacheDir = getDiskCacheDir(context, "image");
-            if (!cacheDir.exists()) {
-                cacheDir.mkdir();
+        final Context appContext = context.getApplicationContext() != null
+                ? context.getApplicationContext() : context;
+        Thread opener = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    File cacheDir = getDiskCacheDir(appContext, "image");
+                    if (!cacheDir.exists()) {
+                        cacheDir.mkdir();
+                    }
+                    mDiskCache = DiskLruCache.open(cacheDir, ImgUtil.getAppVersion(appContext), 2, 10 * 1024 * 1024);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    mOpened.countDown();
+                    mGate.open();
+                }
             }
-            mDiskCache = DiskLruCache.open(cacheDir, ImgUtil.getAppVersion(context), 1, 10 * 1024 * 1024);
-        } catch (IOException e) {
-            e.printStackTrace();
+        }, "DiskCache-open");
+        opener.setPriority(Thread.NORM_PRIORITY - 1);
+        opener.start();
+    }
+
+    /**
+     * 等待打开完成，打开失败返回 null
+     */
+    private DiskLruCache awaitOpen() {
+        try {
+            mOpened.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        return mDiskCache;
+    }
+
+    @Override
+    public void executeWhenOpen(Runnable r) {
+        mGate.execute(r);
+    }
+
+    public boolean isOpen() {
+        return mOpened.getCount() == 0 && mDiskCache != null;
+    }
+
+    public void setOnStaleListener(OnStaleListener listener) {
+        mOnStaleListener = listener;
+    }
+
+    public void setEventListener(ImageEventListener listener) {
+        mEventListener = listener;
     }
 
     @Override
     public Bitmap get(String url) {
+        return get(url, false, mOnStaleListener, mEventListener);
+    }
+
+    /**
+     * 共享实例的多个使用方各带自己的监听，不用实例上的
+     */
+    @Override
+    public Bitmap get(String url, OnStaleListener onStale, ImageEventListener events) {
+        return get(url, false, onStale, events);
+    }
+
+    /**
+     * 启动预热用：过期的条目当作未命中，不解码也不触发 onStale，等真正显示时再走校验
+     */
+    Bitmap getFresh(String url) {
+        return get(url, true, null, mEventListener);
+    }
+
+    private Bitmap get(String url, boolean freshOnly, OnStaleListener onStale, ImageEventListener events) {
+        long start = events != ImageEventListener.NONE ? System.nanoTime() : 0;
         String key = ImgUtil.hashKeyForDisk(url);
+        if (events != ImageEventListener.NONE) {
+            events.onStage(url, ImageEventListener.STAGE_HASH_KEY, System.nanoTime() - start);
+        }
+        PendingWrite pending = mWrites.peek(url);
+        if (pending != null) {
+            // 还在写队列里，直接用；只有原始字节的是 openTiled 下载的超大图，
+            // 按像素上限采样解，不整张解进内存
+            return pending.bitmap != null ? pending.bitmap
+                    : BitmapCodec.INSTANCE.decode(pending.encoded, 0, pending.encoded.length);
+        }
+        if (mOpened.getCount() > 0 && Looper.myLooper() == Looper.getMainLooper()) {
+            // 还没打开完不在主线程上等，当作未命中
+            return null;
+        }
+        DiskLruCache diskCache = awaitOpen();
+        if (diskCache == null) {
+            return null;
+        }
         try {
-            DiskLruCache.Snapshot snapShot = mDiskCache.get(key);
+            DiskLruCache.Snapshot snapShot = diskCache.get(key);
             if (snapShot != null) {
-                InputStream is = snapShot.getInputStream(0);
-                Bitmap bitmap = BitmapFactory.decodeStream(is);
+                OnStaleListener listener = freshOnly ? null : onStale;
+                HttpMeta meta = freshOnly || listener != null ? HttpMeta.decode(snapShot.getString(INDEX_META)) : null;
+                boolean stale = meta != null && meta.isStale();
+                if (freshOnly && stale) {
+                    snapShot.close();
+                    return null;
+                }
+                InputStream is = snapShot.getInputStream(INDEX_IMAGE);
+                Bitmap bitmap = BitmapCodec.decodeStream(is);
+                if (bitmap != null && listener != null && stale && meta.canRevalidate()) {
+                    // 先用旧图，后台再校验
+                    listener.onStale(url, meta);
+                }
+                snapShot.close();
                 return bitmap;
             }
         } catch (IOException e) {
@@ -47,50 +198,192 @@ public class DiskCache implements ImageCache {
 
     }
 
+    /**
+     * 还在写队列里的用内存里的字节，已落盘的返回图片文件的流
+     */
+    @Override
+    public InputStream openStream(String url) throws IOException {
+        PendingWrite pending = mWrites.peek(url);
+        if (pending != null && pending.encoded != null) {
+            return new ByteArrayInputStream(pending.encoded);
+        }
+        DiskLruCache diskCache = awaitOpen();
+        if (diskCache == null) {
+            return null;
+        }
+        DiskLruCache.Snapshot snapShot = diskCache.get(ImgUtil.hashKeyForDisk(url));
+        // 快照只持有这些流，关掉返回的流就释放了，不再关快照
+        return snapShot != null ? snapShot.getInputStream(INDEX_IMAGE) : null;
+    }
+
+    @Override
+    public boolean contains(String url) {
+        if (mWrites.peek(url) != null) {
+            return true;
+        }
+        DiskLruCache diskCache = awaitOpen();
+        if (diskCache == null) {
+            return false;
+        }
+        String key = ImgUtil.hashKeyForDisk(url);
+        try {
+            DiskLruCache.Snapshot snapShot = diskCache.get(key);
+            if (snapShot != null) {
+                snapShot.close();
+                return true;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
     @Override
     public void put(final String url, final Bitmap bmp) {
-        ThreadPoolManager.getInstance().execute(new Runnable() {
-            @Override
-            public void run() {
-                String key = ImgUtil.hashKeyForDisk(url);
-                try {
-                    DiskLruCache.Editor editor = mDiskCache.edit(key);
-                    OutputStream ops = editor.newOutputStream(0);
-                    if (writeBmp2Disk(bmp,ops)) {
-                        editor.commit();
-                    } else {
-                        editor.abort();
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+        put(url, bmp, null);
+    }
+
+    /**
+     * 进写队列后立即返回，同一 url 还没写时只保留最新的一次；
+     * 队列满了丢最老的写，不阻塞下载
+     */
+    public void put(String url, Bitmap bmp, HttpMeta meta) {
+        put(url, bmp, meta, null);
+    }
+
+    /**
+     * @param bmp     可为 null（如分块显示的大图没有整图），这时 encoded 必须非空
+     * @param encoded 网络下来的原始字节，非空时原样写入，不再重新编码
+     */
+    public void put(String url, Bitmap bmp, HttpMeta meta, byte[] encoded) {
+        put(url, bmp, meta, encoded, null);
+    }
+
+    /**
+     * @param contentType 源图的 Content-Type，写线程编码 bmp 时按它选格式，
+     *                    见 {@link ImgUtil#setEncodeFormat(String, Bitmap.CompressFormat, int)}
+     */
+    @Override
+    public void put(String url, Bitmap bmp, HttpMeta meta, byte[] encoded, String contentType) {
+        mWrites.offer(url, new PendingWrite(bmp, meta, encoded, contentType));
+    }
+
+    /**
+     * 也只是进写队列
+     */
+    @Override
+    public void putBytes(String url, byte[] data, HttpMeta meta) {
+        put(url, null, meta, data);
+    }
+
+    /**
+     * 因写队列满被丢弃的写入次数
+     */
+    public long getDroppedWrites() {
+        return mWrites.getDroppedCount();
+    }
+
+    /**
+     * 在写线程调用
+     */
+    private void writeEntry(String url, PendingWrite write) {
+        DiskLruCache diskCache = awaitOpen();
+        if (diskCache == null) {
+            return;
+        }
+        String key = ImgUtil.hashKeyForDisk(url);
+        try {
+            DiskLruCache.Editor editor = diskCache.edit(key);
+            if (editor == null) {
+                // 同一 key 正在写
+                return;
             }
-        });
+            byte[] bs;
+            int length;
+            Scratch scratch = Scratch.current();
+            if (write.encoded != null) {
+                bs = write.encoded;
+                length = bs.length;
+            } else if (scratch != null) {
+                // 编码进写线程的输出缓冲，直接写盘，不再复制一份
+                Scratch.Output out = scratch.output();
+                ImgUtil.compress(write.bitmap, write.contentType, out);
+                bs = out.array();
+                length = out.size();
+            } else {
+                bs = ImgUtil.bitmap2Bytes(write.bitmap, write.contentType);
+                length = bs.length;
+            }
+            OutputStream ops = editor.newOutputStream(INDEX_IMAGE);
+            if (writeBytes2Disk(bs, length, ops)) {
+                editor.set(INDEX_META, write.meta != null ? write.meta.encode() : "");
+                editor.commit();
+            } else {
+                editor.abort();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 图片文件不动
+     */
+    @Override
+    public void updateMeta(String url, HttpMeta meta) {
+        PendingWrite pending = mWrites.peek(url);
+        if (pending != null && mWrites.replace(url, new PendingWrite(pending.bitmap, meta, pending.encoded,
+                pending.contentType))) {
+            return;
+        }
+        DiskLruCache diskCache = awaitOpen();
+        if (diskCache == null) {
+            return;
+        }
+        String key = ImgUtil.hashKeyForDisk(url);
+        try {
+            DiskLruCache.Snapshot snapShot = diskCache.get(key);
+            if (snapShot == null) {
+                return;
+            }
+            // 从快照 edit，条目已被替换或淘汰时返回 null
+            DiskLruCache.Editor editor = snapShot.edit();
+            snapShot.close();
+            if (editor == null) {
+                return;
+            }
+            editor.set(INDEX_META, meta.encode());
+            editor.commit();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     private void remove(String url) {
+        DiskLruCache diskCache = awaitOpen();
+        if (diskCache == null) {
+            return;
+        }
         String key = ImgUtil.hashKeyForDisk(url);
         try {
-            mDiskCache.remove(key);
+            diskCache.remove(key);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private boolean writeBmp2Disk(Bitmap bmp, OutputStream ops) {
-        byte[] bs = ImgUtil.bitmap2Bytes(bmp);
-        BufferedOutputStream out = null;
+    /**
+     * 整块一次写入，不再套 BufferedOutputStream
+     */
+    private boolean writeBytes2Disk(byte[] bs, int length, OutputStream ops) {
         try {
-            out = new BufferedOutputStream(ops, 8 * 1024);
-            out.write(bs,0,bs.length);
+            ops.write(bs, 0, length);
             return true;
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
             try {
-                if (out!= null) {
-                    out.close();
-                }
+                ops.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -102,9 +395,10 @@ public class DiskCache implements ImageCache {
      * 将缓存记录同步到journal文件
      */
     public void flush() {
-        if (mDiskCache != null) {
+        DiskLruCache diskCache = awaitOpen();
+        if (diskCache != null) {
             try {
-                mDiskCache.flush();
+                diskCache.flush();
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -114,7 +408,7 @@ public class DiskCache implements ImageCache {
 
 
 
-    private File getDiskCacheDir(Context context, String uniqueName) {
+    static File getDiskCacheDir(Context context, String uniqueName) {
         String cachePath;
         if (Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())
                 || !Environment.isExternalStorageRemovable()) {
@@ -124,4 +418,21 @@ public class DiskCache implements ImageCache {
         }
         return new File(cachePath + File.separator + uniqueName);
     }
+
+    private static class PendingWrite {
+        final Bitmap bitmap;
+        final HttpMeta meta;
+        /**
+         * 可为 null，写盘时再编码
+         */
+        final byte[] encoded;
+        final String contentType;
+
+        PendingWrite(Bitmap bitmap, HttpMeta meta, byte[] encoded, String contentType) {
+            this.bitmap = bitmap;
+            this.meta = meta;
+            this.encoded = encoded;
+            this.contentType = contentType;
+        }
+    }
 }
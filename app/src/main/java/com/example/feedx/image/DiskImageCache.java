@@ -0,0 +1,60 @@
+package com.example.feedx.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 磁盘层：{@link DiskCache}、{@link ContentDiskCache}、{@link SegmentDiskCache} 都实现它，
+ * 加载流程只通过这些方法用磁盘层，不按具体类型分支
+ *
+ * @param <I> 图片类型，见 {@link ImageCodec}
+ */
+public interface DiskImageCache<I> extends ImageCache<I> {
+
+    /**
+     * 取到过期条目时回调，由加载方决定是否去重新校验
+     */
+    interface OnStaleListener {
+        void onStale(String url, HttpMeta meta);
+    }
+
+    /**
+     * 监听按调用传，同一磁盘层可以被多个加载器共用；不记录校验信息的层不会过期，忽略 onStale
+     */
+    I get(String url, OnStaleListener onStale, ImageEventListener events);
+
+    /**
+     * 只查是否存在，不解码
+     */
+    boolean contains(String url);
+
+    /**
+     * 打开完成后再把 r 交给线程池，已打开则直接提交；要读写磁盘的任务从这里提交，不占着工作线程等打开
+     */
+    void executeWhenOpen(Runnable r);
+
+    /**
+     * 立即返回，在后台写
+     *
+     * @param image       可为 null，这时 data 必须非空
+     * @param data        网络下来的原始字节，非空时原样存，不再重新编码
+     * @param contentType 源图的 Content-Type，需要编码 image 时能按它选格式的层按它选
+     */
+    void put(String url, I image, HttpMeta meta, byte[] data, String contentType);
+
+    /**
+     * 只存原始字节，不持有解码后的图片，在工作线程调用
+     */
+    void putBytes(String url, byte[] data, HttpMeta meta);
+
+    /**
+     * 304 后只刷新校验信息，不记录校验信息的层什么也不做
+     */
+    void updateMeta(String url, HttpMeta meta);
+
+    /**
+     * 打开缓存的原始字节，调用方负责关闭；已落盘的尽量返回 FileInputStream，
+     * 可以按需读文件，不用整个读进内存；没有返回 null
+     */
+    InputStream openStream(String url) throws IOException;
+}
@@ -0,0 +1,150 @@
+package com.example.feedx.image;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 host（host:port）记录连续失败（连接失败、超时、5xx）：达到阈值就熔断，退避期内的请求直接失败，
+ * 不再占着工作线程等超时；退避期过后放一个请求去探测，成功即恢复，失败则退避时间翻倍；
+ * 另外记住返回 404 / 410 的 url，一段时间内不再请求；
+ * 默认全进程共用 {@link #shared()}，一个 ImageLoader 发现的故障其他的也不用再踩
+ */
+public class HostHealth {
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    private static final long DEFAULT_BASE_BACKOFF_MILLIS = 2 * 1000;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 2 * 60 * 1000;
+    private static final long DEFAULT_NOT_FOUND_MILLIS = 10 * 60 * 1000;
+    private static final int NOT_FOUND_CAPACITY = 256;
+
+    private static final class State {
+        int failures;
+        /**
+         * 熔断到什么时候（nanoTime）
+         */
+        long openUntil;
+        /**
+         * 退避期过后已放出一个探测请求
+         */
+        boolean probing;
+    }
+
+    private static HostHealth sShared;
+
+    public static synchronized HostHealth shared() {
+        if (sShared == null) {
+            sShared = new HostHealth();
+        }
+        return sShared;
+    }
+
+    private final int mFailureThreshold;
+    private final long mBaseBackoffNanos;
+    private final long mMaxBackoffNanos;
+    private final long mNotFoundNanos;
+    /**
+     * 只记有失败的 host，成功后移除
+     */
+    private final HashMap<String, State> mHosts = new HashMap<>();
+    /**
+     * url -> 过期时间（nanoTime）
+     */
+    private final SizedLruCache<String, Long> mNotFound = new SizedLruCache<>(NOT_FOUND_CAPACITY);
+
+    public HostHealth() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_BASE_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS,
+                DEFAULT_NOT_FOUND_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param failureThreshold 连续失败几次开始熔断
+     * @param baseBackoff      第一次熔断的时长，之后每次探测失败翻倍，不超过 maxBackoff
+     * @param notFoundTtl      404 / 410 的 url 多久内不再请求
+     */
+    public HostHealth(int failureThreshold, long baseBackoff, long maxBackoff, long notFoundTtl, TimeUnit unit) {
+        if (failureThreshold <= 0 || baseBackoff <= 0 || maxBackoff < baseBackoff || notFoundTtl < 0) {
+            throw new IllegalArgumentException();
+        }
+        mFailureThreshold = failureThreshold;
+        mBaseBackoffNanos = unit.toNanos(baseBackoff);
+        mMaxBackoffNanos = unit.toNanos(maxBackoff);
+        mNotFoundNanos = unit.toNanos(notFoundTtl);
+    }
+
+    /**
+     * 请求前调用，熔断中返回 false；退避期刚过时只放行一个探测请求
+     */
+    public synchronized boolean allowRequest(String host) {
+        State state = mHosts.get(host);
+        if (state == null || state.failures < mFailureThreshold) {
+            return true;
+        }
+        long now = now();
+        if (now - state.openUntil < 0) {
+            return false;
+        }
+        // 探测请求被取消、没有回报时，下一个退避期过后再放一个
+        state.openUntil = now + backoffNanos(state.failures);
+        state.probing = true;
+        return true;
+    }
+
+    public synchronized void onSuccess(String host) {
+        mHosts.remove(host);
+    }
+
+    public synchronized void onFailure(String host) {
+        State state = mHosts.get(host);
+        if (state == null) {
+            state = new State();
+            mHosts.put(host, state);
+        }
+        if (state.failures >= mFailureThreshold && !state.probing) {
+            // 熔断前已经发出去的请求陆续失败，不再加倍退避
+            return;
+        }
+        state.probing = false;
+        state.failures++;
+        if (state.failures >= mFailureThreshold) {
+            state.openUntil = now() + backoffNanos(state.failures);
+        }
+    }
+
+    private long backoffNanos(int failures) {
+        int shift = Math.min(failures - mFailureThreshold, 20);
+        return Math.min(mBaseBackoffNanos << shift, mMaxBackoffNanos);
+    }
+
+    public boolean isNotFound(String url) {
+        Long expiresAt = mNotFound.get(url);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (now() - expiresAt >= 0) {
+            mNotFound.remove(url);
+            return false;
+        }
+        return true;
+    }
+
+    public void onNotFound(String url) {
+        if (mNotFoundNanos > 0) {
+            mNotFound.put(url, now() + mNotFoundNanos);
+        }
+    }
+
+    /**
+     * 测试时覆盖，换成可控的时钟
+     */
+    long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * 网络切换后调用，之前的失败记录不再有参考价值
+     */
+    public synchronized void reset() {
+        mHosts.clear();
+        mNotFound.evictAll();
+    }
+}
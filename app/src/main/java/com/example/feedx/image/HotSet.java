@@ -0,0 +1,204 @@
+package com.example.feedx.image;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 内存缓存的热点 key 统计：每次访问分数 +1，按半衰期随时间衰减，兼顾频率和新近程度；
+ * 进入后台时存成一个小文件，下次启动按分数从磁盘预解码到内存；
+ * 同一个文件只应有一个实例，见 ImageLoader 里的进程级单例
+ */
+public class HotSet {
+
+    /**
+     * 分数半衰期，跨进程也有效，上次会话的热点下次启动仍然靠前
+     */
+    private static final long HALF_LIFE_MILLIS = 6 * 60 * 60 * 1000L;
+    /**
+     * 文件里最多存多少个 key
+     */
+    private static final int MAX_SAVED = 128;
+    /**
+     * 内存里统计的 key 超过 MAX_SAVED 的这个倍数就裁掉低分的
+     */
+    private static final int PRUNE_FACTOR = 4;
+
+    private static final String MAGIC = "hotset 1";
+
+    private final File mFile;
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    /**
+     * 多个缓存同时 trim 时 save 会并发，串行化，免得共用的 .tmp 被互相截断
+     */
+    private final Object mSaveLock = new Object();
+    private boolean mLoaded;
+
+    public HotSet(File file) {
+        mFile = file;
+    }
+
+    /**
+     * 记录一次访问，在主线程调用，只做 map 操作
+     */
+    public synchronized void record(String key) {
+        long now = System.currentTimeMillis();
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, 0, now);
+            mEntries.put(key, entry);
+        }
+        entry.score = entry.scoreAt(now) + 1;
+        entry.lastAccess = now;
+        if (mEntries.size() > MAX_SAVED * PRUNE_FACTOR) {
+            List<Entry> top = top(now, MAX_SAVED);
+            mEntries.clear();
+            for (Entry e : top) {
+                mEntries.put(e.key, e);
+            }
+        }
+    }
+
+    /**
+     * 按当前分数取前 n 个 key
+     */
+    public synchronized List<String> hottest(int n) {
+        List<String> keys = new ArrayList<>();
+        for (Entry entry : top(System.currentTimeMillis(), n)) {
+            keys.add(entry.key);
+        }
+        return keys;
+    }
+
+    private List<Entry> top(final long now, int n) {
+        List<Entry> entries = new ArrayList<>(mEntries.values());
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Double.compare(b.scoreAt(now), a.scoreAt(now));
+            }
+        });
+        return entries.size() > n ? new ArrayList<>(entries.subList(0, n)) : entries;
+    }
+
+    /**
+     * 写文件，先写临时文件再改名，进程中途被杀也不会留下半个文件；在工作线程调用
+     */
+    public void save() {
+        synchronized (mSaveLock) {
+            // 在锁里取快照，后写的总是较新的
+            List<Entry> top;
+            synchronized (this) {
+                top = top(System.currentTimeMillis(), MAX_SAVED);
+            }
+            write(top);
+        }
+    }
+
+    private void write(List<Entry> top) {
+        File tmp = new File(mFile.getPath() + ".tmp");
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(tmp));
+            writer.write(MAGIC + "\n");
+            for (Entry entry : top) {
+                writer.write(entry.score + " " + entry.lastAccess + " " + entry.key + "\n");
+            }
+            writer.close();
+            writer = null;
+            if (!tmp.renameTo(mFile)) {
+                throw new IOException("rename hotset failed");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                if (writer != null) {
+                    writer.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 读上次保存的统计并合并进来，只读一次，在工作线程调用
+     */
+    public void load() {
+        synchronized (this) {
+            if (mLoaded) {
+                return;
+            }
+            mLoaded = true;
+        }
+        if (!mFile.exists()) {
+            return;
+        }
+        List<Entry> loaded = new ArrayList<>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(mFile));
+            if (!MAGIC.equals(reader.readLine())) {
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // url 放最后，本身带空格也没关系
+                String[] parts = line.split(" ", 3);
+                if (parts.length != 3) {
+                    continue;
+                }
+                try {
+                    loaded.add(new Entry(parts[2], Double.parseDouble(parts[0]), Long.parseLong(parts[1])));
+                } catch (NumberFormatException e) {
+                    // 跳过坏行
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        synchronized (this) {
+            for (Entry entry : loaded) {
+                // 本次进程已经访问过的以内存里的为准
+                if (!mEntries.containsKey(entry.key)) {
+                    mEntries.put(entry.key, entry);
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        final String key;
+        double score;
+        long lastAccess;
+
+        Entry(String key, double score, long lastAccess) {
+            this.key = key;
+            this.score = score;
+            this.lastAccess = lastAccess;
+        }
+
+        double scoreAt(long now) {
+            long age = Math.max(0, now - lastAccess);
+            return score * Math.pow(0.5, (double) age / HALF_LIFE_MILLIS);
+        }
+    }
+}
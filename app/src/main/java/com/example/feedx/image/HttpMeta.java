@@ -0,0 +1,104 @@
+package com.example.feedx.image;
+
+import java.util.Date;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 与磁盘缓存条目一起存的 http 校验信息（ETag / Last-Modified）和过期时间，
+ * 过期后带条件请求重新校验，304 就不用再下载
+ */
+public class HttpMeta {
+
+    /**
+     * 服务端没给 max-age 时的默认有效期
+     */
+    private static final long DEFAULT_FRESH_MILLIS = 60 * 60 * 1000L;
+    private static final long MAX_HEURISTIC_MILLIS = 24 * 60 * 60 * 1000L;
+
+    public final String etag;
+    public final String lastModified;
+    public final long expiresAt;
+
+    public HttpMeta(String etag, String lastModified, long expiresAt) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.expiresAt = expiresAt;
+    }
+
+    public static HttpMeta from(Response response) {
+        long now = System.currentTimeMillis();
+        String lastModified = response.header("Last-Modified");
+        long freshMillis = DEFAULT_FRESH_MILLIS;
+        int maxAge = response.cacheControl().maxAgeSeconds();
+        if (maxAge >= 0) {
+            freshMillis = maxAge * 1000L;
+        } else {
+            Date modified = response.headers().getDate("Last-Modified");
+            if (modified != null && modified.getTime() < now) {
+                // 启发式：修改时间距今的 10%
+                freshMillis = Math.min((now - modified.getTime()) / 10, MAX_HEURISTIC_MILLIS);
+            }
+        }
+        return new HttpMeta(response.header("ETag"), lastModified, now + freshMillis);
+    }
+
+    /**
+     * 304 响应可能不带校验头，沿用旧的
+     */
+    public HttpMeta orElse(HttpMeta old) {
+        if (old == null) {
+            return this;
+        }
+        return new HttpMeta(etag != null ? etag : old.etag,
+                lastModified != null ? lastModified : old.lastModified,
+                expiresAt);
+    }
+
+    public boolean isStale() {
+        return System.currentTimeMillis() >= expiresAt;
+    }
+
+    /**
+     * 没有校验信息就没法做条件请求
+     */
+    public boolean canRevalidate() {
+        return etag != null || lastModified != null;
+    }
+
+    public void applyTo(Request.Builder builder) {
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            builder.header("If-Modified-Since", lastModified);
+        }
+    }
+
+    /**
+     * 一行一个字段：etag、lastModified、expiresAt
+     */
+    public String encode() {
+        return (etag != null ? etag : "") + "\n"
+                + (lastModified != null ? lastModified : "") + "\n"
+                + expiresAt + "\n";
+    }
+
+    public static HttpMeta decode(String text) {
+        if (text == null) {
+            return null;
+        }
+        String[] lines = text.split("\n", -1);
+        if (lines.length < 3) {
+            return null;
+        }
+        try {
+            return new HttpMeta(lines[0].isEmpty() ? null : lines[0],
+                    lines[1].isEmpty() ? null : lines[1],
+                    Long.parseLong(lines[2]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -1,8 +1,9 @@
 package com.example.feedx.image;
 
-import android.graphics.Bitmap;
-
-public interface ImageCache {
-    public Bitmap get(String url);
-    public void put(String url, Bitmap bmp);
+/**
+ * @param <I> 图片类型，Android 上是 Bitmap，见 {@link ImageCodec}
+ */
+public interface ImageCache<I> {
+    public I get(String url);
+    public void put(String url, I bmp);
 }
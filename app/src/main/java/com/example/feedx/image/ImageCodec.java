@@ -0,0 +1,25 @@
+package com.example.feedx.image;
+
+/**
+ * 图片编解码，缓存和加载流程只通过它接触具体的图片类型，
+ * Android 上是 {@link BitmapCodec}，纯 JVM 上可以用 javax.imageio 实现
+ *
+ * @param <I> 解码后的图片类型
+ */
+public interface ImageCodec<I> {
+
+    /**
+     * 解码失败返回 null
+     */
+    I decode(byte[] data, int offset, int length);
+
+    /**
+     * 编码成适合存磁盘的字节，格式由实现决定
+     */
+    byte[] encode(I image);
+
+    /**
+     * 解码后在内存里占的字节数，内存缓存按它计容量
+     */
+    int sizeOf(I image);
+}
@@ -0,0 +1,56 @@
+package com.example.feedx.image;
+
+/**
+ * 图片加载各阶段的耗时与各级缓存命中事件，
+ * 默认 {@link #NONE} 什么都不做，且加载流程在 NONE 时不会去取时间戳；
+ * 回调在加载所在线程执行，实现需线程安全且足够轻
+ */
+public abstract class ImageEventListener {
+
+    public static final ImageEventListener NONE = new ImageEventListener() {
+    };
+
+    /**
+     * ImgUtil.hashKeyForDisk
+     */
+    public static final int STAGE_HASH_KEY = 0;
+    /**
+     * 内存缓存查找
+     */
+    public static final int STAGE_MEMORY = 1;
+    /**
+     * 磁盘缓存读取 + 解码
+     */
+    public static final int STAGE_DISK = 2;
+    /**
+     * 线程池排队等待
+     */
+    public static final int STAGE_QUEUE = 3;
+    /**
+     * 网络请求
+     */
+    public static final int STAGE_FETCH = 4;
+    /**
+     * 网络数据解码
+     */
+    public static final int STAGE_DECODE = 5;
+    /**
+     * 变换
+     */
+    public static final int STAGE_TRANSFORM = 6;
+    /**
+     * 工作线程结束到主线程回调
+     */
+    public static final int STAGE_DELIVER = 7;
+    public static final int STAGE_COUNT = 8;
+
+    public static final int TIER_MEMORY = 0;
+    public static final int TIER_DISK = 1;
+    public static final int TIER_COUNT = 2;
+
+    public void onStage(String url, int stage, long nanos) {
+    }
+
+    public void onCacheResult(String url, int tier, boolean hit) {
+    }
+}
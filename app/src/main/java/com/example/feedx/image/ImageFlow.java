@@ -0,0 +1,34 @@
+package com.example.feedx.image;
+
+/**
+ * 和 java.util.concurrent.Flow（Reactive Streams）同样的三个接口，
+ * Flow 要 API 30 才有，这里单独定义，签名保持一致，以后可以直接换
+ */
+public final class ImageFlow {
+
+    private ImageFlow() {
+    }
+
+    public interface Publisher<T> {
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+        /**
+         * 再要 n 个，n <= 0 时以 IllegalArgumentException 结束
+         */
+        void request(long n);
+
+        void cancel();
+    }
+}
@@ -0,0 +1,304 @@
+package com.example.feedx.image;
+
+import com.example.feedx.pool.ThreadPoolManager;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 图片下载，所有 ImageLoader 共用一个调好参数的 OkHttpClient，
+ * 连接池、超时在第一次使用前可通过静态方法配置；
+ * 默认共用 {@link HostHealth#shared()}，host 熔断中或 url 刚返回过 404 时不发请求，直接失败；
+ * 不依赖 android，可以直接对着 MockWebServer 测
+ */
+public class ImageHttp {
+
+    private static int sMaxIdleConnections = ThreadPoolManager.CORE_POOL_SIZE;
+    private static long sKeepAliveMillis = TimeUnit.MINUTES.toMillis(5);
+    private static int sMaxRequestsPerHost = ThreadPoolManager.CORE_POOL_SIZE;
+    private static long sConnectTimeoutMillis = 10 * 1000;
+    private static long sReadTimeoutMillis = 15 * 1000;
+    private static long sWriteTimeoutMillis = 15 * 1000;
+
+    /**
+     * 告诉服务端能解的格式，优先 WebP；Android 4.3 起 WebP 支持透明和无损
+     */
+    private static volatile String sAccept = "image/webp,image/*;q=0.8";
+
+    private static OkHttpClient sShared;
+    /**
+     * 每个 host 的并发许可，同步 execute() 不经过 Dispatcher，由 fetch 自己限制；
+     * 改上限时整体换掉，已拿到旧许可的请求照常归还到旧的上面
+     */
+    private static volatile ConcurrentHashMap<String, Semaphore> sHostPermits = new ConcurrentHashMap<>();
+
+    public static void setAccept(String accept) {
+        sAccept = accept;
+    }
+
+    /**
+     * 连接池，空闲连接数默认与线程池大小一致，每个工作线程都能复用自己的 keep-alive 连接
+     */
+    public static synchronized void setConnectionPool(int maxIdleConnections, long keepAlive, TimeUnit unit) {
+        sMaxIdleConnections = maxIdleConnections;
+        sKeepAliveMillis = unit.toMillis(keepAlive);
+        sShared = null;
+    }
+
+    /**
+     * 单个 host 的并发上限，默认与线程池大小一致；对所有 ImageHttp 的 fetch 生效，包括自带 client 的
+     */
+    public static synchronized void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        sMaxRequestsPerHost = maxRequestsPerHost;
+        sHostPermits = new ConcurrentHashMap<>();
+        sShared = null;
+    }
+
+    private static Semaphore hostPermits(String host) {
+        ConcurrentHashMap<String, Semaphore> permits = sHostPermits;
+        Semaphore semaphore = permits.get(host);
+        if (semaphore == null) {
+            synchronized (ImageHttp.class) {
+                Semaphore created = new Semaphore(sMaxRequestsPerHost);
+                semaphore = permits.putIfAbsent(host, created);
+                if (semaphore == null) {
+                    semaphore = created;
+                }
+            }
+        }
+        return semaphore;
+    }
+
+    public static synchronized void setTimeouts(long connect, long read, long write, TimeUnit unit) {
+        sConnectTimeoutMillis = unit.toMillis(connect);
+        sReadTimeoutMillis = unit.toMillis(read);
+        sWriteTimeoutMillis = unit.toMillis(write);
+        sShared = null;
+    }
+
+    public static synchronized OkHttpClient shared() {
+        if (sShared == null) {
+            // 同步 execute() 不受 Dispatcher 限制，单 host 并发由 fetch 里的许可限制；这里的限制对异步调用生效
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(ThreadPoolManager.CORE_POOL_SIZE);
+            dispatcher.setMaxRequestsPerHost(sMaxRequestsPerHost);
+            sShared = new OkHttpClient.Builder()
+                    .dispatcher(dispatcher)
+                    .connectionPool(new ConnectionPool(sMaxIdleConnections, sKeepAliveMillis, TimeUnit.MILLISECONDS))
+                    // https 下通过 ALPN 协商 h2，同一 host 的请求复用一条连接
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .connectTimeout(sConnectTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .readTimeout(sReadTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .writeTimeout(sWriteTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .retryOnConnectionFailure(true)
+                    .build();
+        }
+        return sShared;
+    }
+
+    /**
+     * 为 null 时第一次请求才取共享 client，避免在主线程初始化 ssl 等
+     */
+    private final OkHttpClient mClient;
+    private final HostHealth mHealth;
+
+    public ImageHttp() {
+        this(null);
+    }
+
+    public ImageHttp(OkHttpClient client) {
+        this(client, HostHealth.shared());
+    }
+
+    public ImageHttp(OkHttpClient client, HostHealth health) {
+        mClient = client;
+        mHealth = health;
+    }
+
+    public HostHealth getHostHealth() {
+        return mHealth;
+    }
+
+    private OkHttpClient client() {
+        return mClient != null ? mClient : shared();
+    }
+
+    /**
+     * @param validators 非空时带 If-None-Match / If-Modified-Since，304 返回 {@link Result#isNotModified()}
+     * @throws HostUnavailableException host 熔断中，没有发请求
+     * @throws HttpStatusException      非 2xx / 304，包括不久前返回过 404 的 url
+     * @throws InterruptedIOException   等 host 并发许可时被中断
+     */
+    public Result fetch(String url, HttpMeta validators) throws IOException {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null) {
+            // 和 Request.Builder#url(String) 一致
+            throw new IllegalArgumentException("unexpected url: " + url);
+        }
+        // 同一 host 的不同端口可能是不同的服务，分开算
+        String host = httpUrl.host() + ":" + httpUrl.port();
+        if (mHealth.isNotFound(url)) {
+            throw new HttpStatusException(404, "Not found (cached) " + url);
+        }
+        if (!mHealth.allowRequest(host)) {
+            throw new HostUnavailableException(host);
+        }
+        Request.Builder builder = new Request.Builder().url(httpUrl).header("Accept", sAccept);
+        if (validators != null) {
+            validators.applyTo(builder);
+        }
+        Semaphore permits = hostPermits(host);
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + host);
+        }
+        try (Response response = client().newCall(builder.build()).execute()) {
+            int code = response.code();
+            if (code == 304) {
+                mHealth.onSuccess(host);
+                return new Result(null, HttpMeta.from(response).orElse(validators), null);
+            }
+            if (!response.isSuccessful()) {
+                if (code >= 500 || code == 429) {
+                    mHealth.onFailure(host);
+                } else {
+                    // 4xx 是这个 url 的问题，host 本身是好的
+                    mHealth.onSuccess(host);
+                    if (code == 404 || code == 410) {
+                        mHealth.onNotFound(url);
+                    }
+                }
+                throw new HttpStatusException(code, "Unexpected code " + response);
+            }
+            Result result = new Result(response.body().bytes(), HttpMeta.from(response),
+                    mimeType(response.header("Content-Type")));
+            mHealth.onSuccess(host);
+            return result;
+        } catch (HttpStatusException e) {
+            throw e;
+        } catch (IOException e) {
+            if (isHostFailure(e)) {
+                mHealth.onFailure(host);
+            }
+            throw e;
+        } finally {
+            // 响应体读完、连接归还后才放行下一个
+            permits.release();
+        }
+    }
+
+    /**
+     * 请求被取消时的中断不算 host 的问题；读超时的 SocketTimeoutException 也是 InterruptedIOException
+     */
+    private static boolean isHostFailure(IOException e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        return !(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException;
+    }
+
+    /**
+     * 服务端返回了非 2xx / 304
+     */
+    public static class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public final int code;
+
+        public HttpStatusException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    /**
+     * host 熔断中，请求没有发出
+     */
+    public static class HostUnavailableException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public final String host;
+
+        public HostUnavailableException(String host) {
+            super("Host unavailable " + host);
+            this.host = host;
+        }
+    }
+
+    /**
+     * 去掉参数并转小写，如 "Image/PNG; charset=x" -> "image/png"
+     */
+    static String mimeType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim();
+        return type.isEmpty() ? null : type.toLowerCase(Locale.US);
+    }
+
+    /**
+     * 响应给了 image/* 就用它，否则（没给、application/octet-stream 等）按文件头判断，都不认识时为 null
+     */
+    static String contentTypeOf(String contentType, byte[] data) {
+        String type = mimeType(contentType);
+        if (type != null && type.startsWith("image/")) {
+            return type;
+        }
+        if (data == null || data.length < 12) {
+            return null;
+        }
+        if ((data[0] & 0xff) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+            return "image/png";
+        }
+        if ((data[0] & 0xff) == 0xff && (data[1] & 0xff) == 0xd8) {
+            return "image/jpeg";
+        }
+        if (data[0] == 'G' && data[1] == 'I' && data[2] == 'F') {
+            return "image/gif";
+        }
+        if (data[0] == 'R' && data[1] == 'I' && data[2] == 'F' && data[3] == 'F'
+                && data[8] == 'W' && data[9] == 'E' && data[10] == 'B' && data[11] == 'P') {
+            return "image/webp";
+        }
+        return null;
+    }
+
+    public static class Result {
+        /**
+         * 304 时为 null
+         */
+        public final byte[] data;
+        public final HttpMeta meta;
+        /**
+         * 响应的 Content-Type，不带参数；304 或服务端没给时为 null
+         */
+        public final String contentType;
+
+        Result(byte[] data, HttpMeta meta, String contentType) {
+            this.data = data;
+            this.meta = meta;
+            this.contentType = contentType;
+        }
+
+        public boolean isNotModified() {
+            return data == null;
+        }
+    }
+}
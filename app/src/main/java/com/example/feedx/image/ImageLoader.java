@@ -2,18 +2,23 @@ package com.example.feedx.image;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.util.Log;
 import android.widget.ImageView;
 
 import com.example.feedx.pool.ThreadPoolManager;
 import com.example.feedx.pool.XAsync;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 
 //import com.example.netdemo.net.HttpHandler;
 //import com.example.netdemo.test.ViewCallback;
@@ -22,89 +27,545 @@ public class ImageLoader {
 
     private String TAG = "ImageLoader";
 
-    private ImageCache mImageCache;
+    /**
+     * 预加载同时占用的线程数，不是调度优先级；预加载线程本身都以最低优先级运行
+     */
+    public static final int PREFETCH_CONCURRENCY_LOW = 1;
+    public static final int PREFETCH_CONCURRENCY_NORMAL = 2;
+    /**
+     * 预加载的图多久没被显示就不再占预算，多半已经滑过去或被缓存淘汰
+     */
+    private static final long PREFETCH_TTL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * 启动预热：最多解码多少个热点、最多用多长时间
+     */
+    private static final int WARM_START_KEYS = 32;
+    private static final long WARM_START_MILLIS = 500;
+
+    /**
+     * 全进程一个，多个 ImageLoader 不会各自读写同一个文件
+     */
+    private static HotSet sHotSet;
+
+    private ImageCache<Bitmap> mImageCache;
+    /**
+     * 缓存 -> 网络 -> 变换 -> 写缓存 的流程，换缓存时重建
+     */
+    private ImagePipeline<Bitmap> mPipeline;
+    private ImageHttp mHttp = new ImageHttp();
+    /**
+     * 预加载写入缓存、还没被显示的字节数上限，多次 prefetch 累计，默认磁盘缓存的一半
+     */
+    private long mPrefetchBudget = 5 * 1024 * 1024;
+    /**
+     * 已预加载还没显示的 url -> {字节数, 写入时间}，按写入顺序；由 this 保护
+     */
+    private final LinkedHashMap<String, long[]> mPrefetched = new LinkedHashMap<>();
+    private long mPrefetchedBytes;
+    /**
+     * displayImage 的请求排队超过这个时间还没开始就丢弃，0 不限
+     */
+    private long mRequestDeadlineMillis = 5 * 1000;
+    /**
+     * displayImage 请求的分组，默认每个 ImageLoader 一组
+     */
+    private Object mTag = this;
+    private ImageEventListener mEventListener = ImageEventListener.NONE;
+    /**
+     * 加载中和加载失败时显示的图，0 不设置
+     */
+    private int mPlaceholderResId;
+    /**
+     * 分块显示的块缓存，第一次 openTiled 时创建，容量为进程可用内存的 1/16
+     */
+    private SizedLruCache<TiledImage.TileKey, Bitmap> mTileCache;
 
+    /**
+     * 各 ImageLoader 共用 {@link DiskCache#shared(Context)}，内存缓存各自一份
+     */
     public ImageLoader(Context context) {
+        this(context, DiskCache.shared(context));
+    }
+
+    /**
+     * 用指定的磁盘缓存，同一目录只能有一个 DiskCache 实例，需要直接操作磁盘缓存时（如基准测试）用这个
+     */
+    public ImageLoader(Context context, DiskCache diskCache) {
         // 默认使用双缓存
-        mImageCache = new DoubleCache(context);
+        MemoryCache memoryCache = new MemoryCache();
+        MemoryTrimmer.install(context).register(memoryCache);
+        HotSet hotSet = hotSet(context);
+        memoryCache.setHotSet(hotSet);
+        setImageCache(new DoubleCache(memoryCache, diskCache));
+        warmStart(hotSet, memoryCache, diskCache);
     }
 
-    public void setImageCache(ImageCache cache) {
+    private static synchronized HotSet hotSet(Context context) {
+        if (sHotSet == null) {
+            sHotSet = new HotSet(new File(context.getApplicationContext().getCacheDir(), "image_hotset"));
+        }
+        return sHotSet;
+    }
+
+    /**
+     * 读上次会话保存的热点，按分数从磁盘解码进内存，首屏直接命中内存；
+     * 低优先级后台执行，超过时间或内存缓存 1/4 容量就停；
+     * 过期的条目不预热，免得启动时一批校验请求，留给显示时再校验
+     */
+    private void warmStart(final HotSet hotSet, final MemoryCache memoryCache, final DiskCache diskCache) {
+        diskCache.executeWhenOpen(new Runnable() {
+            @Override
+            public void run() {
+                Thread t = Thread.currentThread();
+                int priority = t.getPriority();
+                t.setPriority(Thread.MIN_PRIORITY);
+                try {
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WARM_START_MILLIS);
+                    long budget = memoryCache.getMaxSize() * 1024L / 4;
+                    long loaded = 0;
+                    hotSet.load();
+                    for (String key : hotSet.hottest(WARM_START_KEYS)) {
+                        if (loaded >= budget || System.nanoTime() - deadline > 0) {
+                            break;
+                        }
+                        Bitmap bitmap = diskCache.getFresh(key);
+                        if (bitmap != null && memoryCache.warm(key, bitmap)) {
+                            loaded += bitmap.getByteCount();
+                        }
+                    }
+                } finally {
+                    t.setPriority(priority);
+                }
+            }
+        });
+    }
+
+    /**
+     * 是 {@link DoubleCache} 时分内存、磁盘两层走流程，否则整个当作内存层
+     */
+    public void setImageCache(ImageCache<Bitmap> cache) {
+        ImagePipeline<Bitmap> pipeline = cache instanceof DoubleCache
+                ? new ImagePipeline<>(BitmapCodec.INSTANCE, ((DoubleCache) cache).mMemoryCache,
+                ((DoubleCache) cache).mDiskCache, mHttp)
+                : new ImagePipeline<>(BitmapCodec.INSTANCE, cache, null, mHttp);
+        pipeline.setEventListener(mEventListener);
         mImageCache = cache;
+        mPipeline = pipeline;
+    }
+
+    public ImageCache<Bitmap> getImageCache() {
+        return mImageCache;
+    }
+
+    /**
+     * 各阶段耗时、缓存命中事件，传 null 恢复为 {@link ImageEventListener#NONE}
+     */
+    public void setEventListener(ImageEventListener listener) {
+        mEventListener = listener != null ? listener : ImageEventListener.NONE;
+        mPipeline.setEventListener(mEventListener);
+    }
+
+    /**
+     * 默认用 {@link ImageHttp#shared()}，测试时可换成指向 MockWebServer 的 client
+     */
+    public void setHttpClient(OkHttpClient client) {
+        mHttp = new ImageHttp(client, mHttp.getHostHealth());
+        mPipeline.setHttp(mHttp);
+    }
+
+    /**
+     * 各 host 的熔断状态和 404 记录，网络切换后可以 {@link HostHealth#reset()}
+     */
+    public HostHealth getHostHealth() {
+        return mHttp.getHostHealth();
+    }
+
+    public void setPlaceholder(int resId) {
+        mPlaceholderResId = resId;
+    }
+
+    public synchronized void setPrefetchBudget(long bytes) {
+        mPrefetchBudget = bytes;
+    }
+
+    public void setRequestDeadline(long timeout, TimeUnit unit) {
+        mRequestDeadlineMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * 多个 ImageLoader 可以共用一个 tag，一起取消
+     */
+    public void setTag(Object tag) {
+        mTag = tag != null ? tag : this;
+    }
+
+    public Object getTag() {
+        return mTag;
+    }
+
+    /**
+     * 取消本组还没完成的 displayImage 请求，不再回调，页面销毁时调用，
+     * 释放请求持有的 ImageView
+     */
+    public void cancelAll() {
+        ThreadPoolManager.getInstance().cancelAll(mTag);
+    }
+
+    /**
+     * 预加载到磁盘缓存，一般在列表滚动时对可见区域之后的 N 行调用；
+     * 预加载了还没显示的图总量受 {@link #setPrefetchBudget} 限制，显示后退回预算
+     *
+     * @param maxConcurrent 同时占用几个线程，见 {@link #PREFETCH_CONCURRENCY_LOW}
+     */
+    public Prefetch prefetch(List<String> urls, int maxConcurrent) {
+        return prefetch(urls, maxConcurrent, false);
+    }
+
+    /**
+     * @param toMemory 是否同时放进内存缓存
+     */
+    public Prefetch prefetch(List<String> urls, int maxConcurrent, boolean toMemory) {
+        Prefetch prefetch = new Prefetch(this, urls, maxConcurrent, toMemory);
+        prefetch.start();
+        return prefetch;
+    }
+
+    /**
+     * 预算还有剩余时返回 true，顺带把过期的预加载记录退回预算
+     */
+    synchronized boolean hasPrefetchBudget() {
+        long now = System.nanoTime();
+        Iterator<long[]> it = mPrefetched.values().iterator();
+        while (it.hasNext()) {
+            long[] entry = it.next();
+            if (now - entry[1] < PREFETCH_TTL_NANOS) {
+                break;
+            }
+            mPrefetchedBytes -= entry[0];
+            it.remove();
+        }
+        return mPrefetchedBytes < mPrefetchBudget;
+    }
+
+    synchronized void onPrefetched(String url, long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        long[] old = mPrefetched.remove(url);
+        if (old != null) {
+            mPrefetchedBytes -= old[0];
+        }
+        mPrefetched.put(url, new long[]{bytes, System.nanoTime()});
+        mPrefetchedBytes += bytes;
+    }
+
+    /**
+     * 预加载过的图显示了，占的预算退回
+     */
+    private synchronized void onDisplayed(String url) {
+        long[] entry = mPrefetched.remove(url);
+        if (entry != null) {
+            mPrefetchedBytes -= entry[0];
+        }
+    }
+
+    /**
+     * 批量加载，不依赖 ImageView：订阅后按 request(n) 的需求取 url，完成一个发一个，
+     * 同时最多 maxInFlight 个未发出，适合后台批处理
+     *
+     * @param ordered true 按输入顺序发出，false 按完成顺序
+     */
+    public BatchPublisher loadAll(Iterable<String> urls, int maxInFlight, boolean ordered,
+                                  Transformation... transformations) {
+        return new BatchPublisher(this, urls, maxInFlight, ordered, transformations);
     }
 
     public void displayImage(final String url, final ImageView imageView) {
-        final Bitmap bitmap = mImageCache.get(url);
+        displayImage(url, imageView, new Transformation[0]);
+    }
+
+    /**
+     * 带变换显示，变换在线程池里做，结果按 url + 变换链缓存，
+     * 再次显示时解码和变换都省了；
+     * 主线程上只查内存，磁盘读取和解码都放到线程池
+     */
+    public void displayImage(final String url, final ImageView imageView, Transformation... transformations) {
+        onDisplayed(url);
+        final String key = cacheKey(url, transformations);
+        final Bitmap bitmap = getFromMemory(key);
         if (bitmap != null) {
             imageView.setImageBitmap(bitmap);
             Log.e(TAG,"image cache");
             return;
         }
-        requestImage(url, imageView);
+        if (mPlaceholderResId != 0) {
+            imageView.setImageResource(mPlaceholderResId);
+        }
+        requestImage(url, key, imageView, transformations);
     }
 
-    private void requestImage(final String url, final ImageView imageView) {
-        ThreadPoolManager.getInstance().execute(new XAsync<Bitmap>() {
+    private void requestImage(final String url, final String key, final ImageView imageView,
+                              final Transformation[] transformations) {
+        final ImageEventListener events = mEventListener;
+        final boolean tracing = events != ImageEventListener.NONE;
+        final long enqueued = tracing ? System.nanoTime() : 0;
+        XAsync<Bitmap> request = new XAsync<Bitmap>() {
+            long finished;
+
             @Override
             protected Bitmap task() {
+                if (tracing) {
+                    events.onStage(url, ImageEventListener.STAGE_QUEUE, System.nanoTime() - enqueued);
+                }
                 try {
-                    return image(url);
+                    return load(url, key, transformations, true);
+                } catch (ImageHttp.HostUnavailableException e) {
+                    // host 熔断中，没发请求，直接显示占位图
+                    Log.w(TAG, e.getMessage());
+                } catch (ImageHttp.HttpStatusException e) {
+                    // 包括近期 404 过的 url，每次显示都会走到这里，调用栈没有信息量
+                    Log.w(TAG, e.getMessage());
                 } catch (IOException e) {
-                    e.printStackTrace();
+                    if (!isCancelled()) {
+                        e.printStackTrace();
+                    }
+                } finally {
+                    if (tracing) {
+                        finished = System.nanoTime();
+                    }
                 }
                 return null;
             }
 
             @Override
             protected void callback(Bitmap result) {
+                if (tracing) {
+                    events.onStage(url, ImageEventListener.STAGE_DELIVER, System.nanoTime() - finished);
+                }
                 if (result != null) {
                     imageView.setImageBitmap(result);
-                    mImageCache.put(url, result);
                 } else {
-                    // 可以显示默认图片
+                    if (mPlaceholderResId != 0) {
+                        imageView.setImageResource(mPlaceholderResId);
+                    }
                     Log.e(TAG,"image error");
                 }
             }
-        });
+
+            @Override
+            protected void expired() {
+                // 排队太久，对应的 item 多半已经滑出屏幕
+                Log.e(TAG,"image request expired");
+            }
+        };
+        request.setTag(mTag);
+        if (mRequestDeadlineMillis > 0) {
+            request.setDeadline(mRequestDeadlineMillis, TimeUnit.MILLISECONDS);
+        }
+        execute(request);
+    }
+
+    /**
+     * 要读磁盘的任务从这里提交：磁盘层还没打开完时排到打开之后，不占着工作线程等，
+     * 主线程上也不用建线程池
+     */
+    void execute(Runnable r) {
+        mPipeline.execute(r);
     }
 
-    private OkHttpClient client = new OkHttpClient();
+    /**
+     * 同步加载，走完整的 缓存 -> 网络 -> 变换 -> 写缓存 流程，不能在主线程调用
+     */
+    public Bitmap load(String url, Transformation... transformations) throws IOException {
+        return load(url, cacheKey(url, transformations), transformations);
+    }
 
-    public Bitmap image(String url) throws IOException {
-        Request request = new Request.Builder()
-                .url(url)
-                .build();
-        try (Response response = client.newCall(request).execute()) {
-            return BitmapFactory.decodeStream(response.body().byteStream());
+    private Bitmap load(String url, String key, Transformation[] transformations) throws IOException {
+        return load(url, key, transformations, false);
+    }
+
+    /**
+     * @param memoryChecked 主线程已经查过内存层（命中与否已上报），这里从磁盘层开始
+     */
+    private Bitmap load(String url, String key, Transformation[] transformations, boolean memoryChecked)
+            throws IOException {
+        return mPipeline.load(url, key, chain(transformations), memoryChecked);
+    }
+
+    /**
+     * 批量加载用：查缓存但结果不放进内存缓存，网络取到的只把原始字节交给磁盘缓存，
+     * 写队列里不留 Bitmap；这样内存占用只和同时在途的个数有关，和批量大小无关
+     */
+    Bitmap loadUnretained(String url, Transformation[] transformations) throws IOException {
+        return mPipeline.loadUnretained(url, cacheKey(url, transformations), chain(transformations));
+    }
+
+    /**
+     * 只查内存层，命中与否照常上报；不是 DoubleCache 时查整个缓存
+     */
+    private Bitmap getFromMemory(String key) {
+        return mPipeline.getFromMemory(key);
+    }
+
+    /**
+     * 变换链交给流水线，没有变换时为 null
+     */
+    private static ImagePipeline.Transform<Bitmap> chain(final Transformation[] transformations) {
+        if (transformations.length == 0) {
+            return null;
+        }
+        return new ImagePipeline.Transform<Bitmap>() {
+            @Override
+            public Bitmap apply(Bitmap source) {
+                return transform(source, transformations);
+            }
+        };
+    }
+
+    /**
+     * 依次应用变换，中间结果用完即回收
+     */
+    static Bitmap transform(Bitmap source, Transformation[] transformations) {
+        Bitmap result = source;
+        for (Transformation transformation : transformations) {
+            Bitmap next = transformation.transform(result);
+            if (result != source && next != result) {
+                result.recycle();
+            }
+            result = next;
         }
+        return result;
+    }
+
+    /**
+     * 变换结果的缓存 key：url#key1,key2
+     */
+    static String cacheKey(String url, Transformation[] transformations) {
+        if (transformations.length == 0) {
+            return url;
+        }
+        StringBuilder sb = new StringBuilder(url).append('#');
+        for (int i = 0; i < transformations.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(transformations[i].key());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 超大图分块显示：原始字节不在磁盘缓存时下载并只存原始字节，不解整图，
+     * 再在上面建 {@link TiledImage}；不能在主线程调用，用完调 {@link TiledImage#recycle()}
+     */
+    public TiledImage openTiled(String url) throws IOException {
+        DiskImageCache<Bitmap> disk = mPipeline.getDiskCache();
+        BitmapRegionDecoder decoder = disk != null ? openRegionDecoder(disk, url) : null;
+        if (decoder == null) {
+            ImageHttp.Result response = mHttp.fetch(url, null);
+            if (disk != null) {
+                disk.putBytes(url, response.data, response.meta);
+            }
+            decoder = BitmapRegionDecoder.newInstance(response.data, 0, response.data.length, false);
+        }
+        return new TiledImage(url, decoder, tileCache());
+    }
+
+    /**
+     * 在缓存的原始字节上建分块解码器，不解整图；已落盘的直接用文件描述符，
+     * 没有缓存或不是分块解码支持的格式返回 null
+     */
+    private static BitmapRegionDecoder openRegionDecoder(DiskImageCache<Bitmap> disk, String url) {
+        InputStream is = null;
+        try {
+            is = disk.openStream(url);
+            if (is == null) {
+                return null;
+            }
+            // 用 fd 时按需读文件；用 InputStream 会把整个文件先读进内存
+            // 解码器持有自己的映射或 fd 副本，流关掉、条目被淘汰都不影响
+            if (is instanceof FileInputStream) {
+                return BitmapRegionDecoder.newInstance(((FileInputStream) is).getFD(), false);
+            }
+            return BitmapRegionDecoder.newInstance(is, false);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            try {
+                if (is != null) {
+                    is.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private synchronized SizedLruCache<TiledImage.TileKey, Bitmap> tileCache() {
+        if (mTileCache == null) {
+            mTileCache = TiledImage.newTileCache((int) (Runtime.getRuntime().maxMemory() / 1024 / 16));
+        }
+        return mTileCache;
+    }
+
+    /**
+     * 解整图，超大图用 {@link #openTiled}
+     */
+    public Bitmap image(String url) throws IOException {
+        byte[] data = fetch(url);
+        return BitmapCodec.INSTANCE.decode(data, 0, data.length);
+    }
+
+    /**
+     * 只取原始字节，不解码
+     */
+    public byte[] fetch(String url) throws IOException {
+        return mHttp.fetch(url, null).data;
+    }
+
+    /**
+     * 预加载单个 url，已缓存的跳过，返回新写入缓存的字节数
+     */
+    long warm(String url, boolean toMemory) throws IOException {
+        return mPipeline.warm(url, toMemory);
     }
 
     /**
      * 双缓存，内存 + 磁盘缓存，
      * 先内存缓存获取，有就可，如果没有图片，
      * 再磁盘缓存获取，有就可，没有再，
-     * 网络获取
+     * 网络获取；
+     * 磁盘层可换成 {@link ContentDiskCache}，按内容去重；
+     * 或 {@link SegmentDiskCache}，条目很多时更省内存
      */
-    class DoubleCache implements ImageCache {
+    public static class DoubleCache implements ImageCache<Bitmap> {
 
-        ImageCache mMemoryCache;
-        ImageCache mDiskCache;
+        ImageCache<Bitmap> mMemoryCache;
+        DiskImageCache<Bitmap> mDiskCache;
 
         public DoubleCache(Context context) {
-            mMemoryCache = new MemoryCache();
-            mDiskCache = new DiskCache(context);
+            this(new MemoryCache(), DiskCache.shared(context));
+        }
+
+        public DoubleCache(ImageCache<Bitmap> memoryCache, DiskImageCache<Bitmap> diskCache) {
+            mMemoryCache = memoryCache;
+            mDiskCache = diskCache;
         }
 
+        /**
+         * 直接查两层；{@link ImageLoader} 经 {@link ImagePipeline} 分层查，过期校验和事件上报在那里
+         */
         @Override
         public Bitmap get(String url) {
             Bitmap bitmap = mMemoryCache.get(url);
-            if (bitmap != null) {
-                return bitmap;
-            }
-            bitmap = mDiskCache.get(url);
-            if (bitmap != null) {
-                // 从磁盘缓存取出后，进行了一次内存缓存
-                mMemoryCache.put(url, bitmap);
+            if (bitmap == null) {
+                bitmap = mDiskCache.get(url);
+                if (bitmap != null) {
+                    // 从磁盘缓存取出后，进行了一次内存缓存
+                    mMemoryCache.put(url, bitmap);
+                }
             }
             return bitmap;
         }
@@ -114,6 +575,25 @@ public class ImageLoader {
             mMemoryCache.put(url, bmp);
             mDiskCache.put(url, bmp);
         }
+
+        public void put(String url, Bitmap bmp, HttpMeta meta) {
+            put(url, bmp, meta, null);
+        }
+
+        /**
+         * @param data 原始编码字节，磁盘层原样存，不重新编码
+         */
+        public void put(String url, Bitmap bmp, HttpMeta meta, byte[] data) {
+            put(url, bmp, meta, data, null);
+        }
+
+        /**
+         * @param contentType 源图的 Content-Type，data 为空、需要编码 bmp 时按它选格式
+         */
+        public void put(String url, Bitmap bmp, HttpMeta meta, byte[] data, String contentType) {
+            mMemoryCache.put(url, bmp);
+            mDiskCache.put(url, bmp, meta, data, contentType);
+        }
     }
 
 }
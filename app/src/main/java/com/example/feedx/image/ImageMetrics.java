@@ -0,0 +1,111 @@
+package com.example.feedx.image;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 聚合版监听：每个阶段一个按 2 的幂分桶的直方图（微秒），
+ * 记录只是几次原子自增，分位数是桶上界的近似值
+ */
+public class ImageMetrics extends ImageEventListener {
+
+    private static final String[] STAGE_NAMES = {
+            "hash", "memory", "disk", "queue", "fetch", "decode", "transform", "deliver"
+    };
+    private static final String[] TIER_NAMES = {"memory", "disk"};
+    /**
+     * 桶 i 存放 [2^(i-1), 2^i) 微秒，最后一桶兜底
+     */
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(STAGE_COUNT * BUCKETS);
+    private final AtomicLongArray mTotalNanos = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLongArray mHits = new AtomicLongArray(TIER_COUNT);
+    private final AtomicLongArray mMisses = new AtomicLongArray(TIER_COUNT);
+
+    @Override
+    public void onStage(String url, int stage, long nanos) {
+        long micros = nanos / 1000;
+        int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        mBuckets.incrementAndGet(stage * BUCKETS + Math.min(bucket, BUCKETS - 1));
+        mTotalNanos.addAndGet(stage, nanos);
+    }
+
+    @Override
+    public void onCacheResult(String url, int tier, boolean hit) {
+        if (hit) {
+            mHits.incrementAndGet(tier);
+        } else {
+            mMisses.incrementAndGet(tier);
+        }
+    }
+
+    public long count(int stage) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += mBuckets.get(stage * BUCKETS + i);
+        }
+        return count;
+    }
+
+    public double meanMillis(int stage) {
+        long count = count(stage);
+        return count == 0 ? 0 : mTotalNanos.get(stage) / 1e6 / count;
+    }
+
+    /**
+     * @param p 0~1，返回所在桶的上界（毫秒）
+     */
+    public double percentileMillis(int stage, double p) {
+        long count = count(stage);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(p * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mBuckets.get(stage * BUCKETS + i);
+            if (seen >= rank) {
+                return (1L << i) / 1000.0;
+            }
+        }
+        return (1L << (BUCKETS - 1)) / 1000.0;
+    }
+
+    public double hitRate(int tier) {
+        long hits = mHits.get(tier);
+        long total = hits + mMisses.get(tier);
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public void reset() {
+        for (int i = 0; i < mBuckets.length(); i++) {
+            mBuckets.set(i, 0);
+        }
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            mTotalNanos.set(i, 0);
+        }
+        for (int i = 0; i < TIER_COUNT; i++) {
+            mHits.set(i, 0);
+            mMisses.set(i, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            if (count(stage) == 0) {
+                continue;
+            }
+            sb.append(String.format(Locale.US, "%-9s n=%d mean=%.3fms p50<=%.3fms p90<=%.3fms p99<=%.3fms%n",
+                    STAGE_NAMES[stage], count(stage), meanMillis(stage), percentileMillis(stage, 0.5),
+                    percentileMillis(stage, 0.9), percentileMillis(stage, 0.99)));
+        }
+        for (int tier = 0; tier < TIER_COUNT; tier++) {
+            sb.append(String.format(Locale.US, "%-9s hit=%d miss=%d rate=%.2f%n", TIER_NAMES[tier],
+                    mHits.get(tier), mMisses.get(tier), hitRate(tier)));
+        }
+        return sb.toString();
+    }
+}
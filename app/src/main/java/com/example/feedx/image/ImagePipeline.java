@@ -0,0 +1,390 @@
+package com.example.feedx.image;
+
+import com.example.feedx.pool.ThreadPoolManager;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 不依赖具体图片类型的加载流程：内存 -> 磁盘 -> 网络 -> 变换 -> 写缓存，解码交给 {@link ImageCodec}；
+ * 磁盘条目过期时后台带条件请求校验，熔断和 404 记录由 {@link ImageHttp} 处理，
+ * 各阶段耗时和命中报给 {@link ImageEventListener}；
+ * {@link ImageLoader} 在上面加 ImageView、预加载和分块显示，纯 JVM 上直接用它做批量处理和吞吐基准
+ *
+ * @param <I> 图片类型
+ */
+public class ImagePipeline<I> {
+
+    /**
+     * 在线程池线程上回调
+     */
+    public interface Callback<I> {
+        void onLoaded(String url, I image);
+
+        void onFailed(String url, Exception e);
+    }
+
+    /**
+     * 对原图做的变换，结果按调用方给的 key 缓存；不要回收传进来的 source，它可能还在缓存里
+     */
+    public interface Transform<I> {
+        I apply(I source);
+    }
+
+    /**
+     * 同一 url 的校验在这段时间内只发一次；任务被线程池拒绝没跑时，过了这段时间也能重新发
+     */
+    private static final long REVALIDATE_COALESCE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final ImageCodec<I> mCodec;
+    private final ImageCache<I> mMemoryCache;
+    /**
+     * 可为 null，只用内存缓存
+     */
+    private final DiskImageCache<I> mDiskCache;
+    private volatile ImageHttp mHttp;
+    private volatile ImageEventListener mEventListener = ImageEventListener.NONE;
+    private final DiskImageCache.OnStaleListener mOnStale = new DiskImageCache.OnStaleListener() {
+        @Override
+        public void onStale(String url, HttpMeta meta) {
+            revalidate(url, meta);
+        }
+    };
+    /**
+     * 正在校验的 url 和开始时间，列表里同一张过期图多次读盘只发一个条件请求
+     */
+    private final ConcurrentHashMap<String, Long> mRevalidating = new ConcurrentHashMap<>();
+
+    private final AtomicLong mMemoryHits = new AtomicLong();
+    private final AtomicLong mDiskHits = new AtomicLong();
+    private final AtomicLong mNetworkLoads = new AtomicLong();
+    private final AtomicLong mNetworkBytes = new AtomicLong();
+
+    public ImagePipeline(ImageCodec<I> codec, ImageCache<I> memoryCache, DiskImageCache<I> diskCache,
+                         ImageHttp http) {
+        mCodec = codec;
+        mMemoryCache = memoryCache;
+        mDiskCache = diskCache;
+        mHttp = http;
+    }
+
+    public void setHttp(ImageHttp http) {
+        mHttp = http;
+    }
+
+    /**
+     * 传 null 恢复为 {@link ImageEventListener#NONE}
+     */
+    public void setEventListener(ImageEventListener listener) {
+        mEventListener = listener != null ? listener : ImageEventListener.NONE;
+    }
+
+    /**
+     * 只查内存层，命中与否照常上报
+     */
+    public I getFromMemory(String key) {
+        ImageEventListener events = mEventListener;
+        boolean tracing = events != ImageEventListener.NONE;
+        long start = tracing ? System.nanoTime() : 0;
+        I image = mMemoryCache.get(key);
+        if (tracing) {
+            events.onStage(key, ImageEventListener.STAGE_MEMORY, System.nanoTime() - start);
+            events.onCacheResult(key, ImageEventListener.TIER_MEMORY, image != null);
+        }
+        if (image != null) {
+            mMemoryHits.incrementAndGet();
+        }
+        return image;
+    }
+
+    /**
+     * 只查磁盘层，命中与否照常上报；取到过期条目时后台校验，本次仍返回旧图
+     *
+     * @param retain 命中后是否放进内存层
+     */
+    public I getFromDisk(String key, boolean retain) {
+        if (mDiskCache == null) {
+            return null;
+        }
+        ImageEventListener events = mEventListener;
+        boolean tracing = events != ImageEventListener.NONE;
+        long start = tracing ? System.nanoTime() : 0;
+        // 磁盘层可能是共享的，监听按调用传，不设在实例上
+        I image = mDiskCache.get(key, mOnStale, events);
+        if (tracing) {
+            events.onStage(key, ImageEventListener.STAGE_DISK, System.nanoTime() - start);
+            events.onCacheResult(key, ImageEventListener.TIER_DISK, image != null);
+        }
+        if (image != null) {
+            mDiskHits.incrementAndGet();
+            if (retain) {
+                mMemoryCache.put(key, image);
+            }
+        }
+        return image;
+    }
+
+    public I get(String key) {
+        I image = getFromMemory(key);
+        return image != null ? image : getFromDisk(key, true);
+    }
+
+    /**
+     * 同步加载，磁盘存的是网络原始字节，不重新编码；解码失败抛 IOException
+     */
+    public I load(String url) throws IOException {
+        I image = load(url, url, null, false);
+        if (image == null) {
+            throw new IOException("decode failed: " + url);
+        }
+        return image;
+    }
+
+    /**
+     * 走完整的 缓存 -> 网络 -> 变换 -> 写缓存 流程，不能在主线程调用；解码失败返回 null
+     *
+     * @param key           结果的缓存 key，没有变换时就是 url
+     * @param transform     可为 null
+     * @param memoryChecked 调用方已经查过内存层（命中与否已上报），这里从磁盘层开始
+     */
+    public I load(String url, String key, Transform<I> transform, boolean memoryChecked) throws IOException {
+        I image = memoryChecked ? getFromDisk(key, true) : get(key);
+        if (image != null) {
+            return image;
+        }
+        return loadUncached(url, key, transform);
+    }
+
+    /**
+     * 缓存里没有 key 时：取原图（有变换时先查缓存，再网络）、变换、写缓存；
+     * 有变换时网络取到的原图只进磁盘缓存
+     */
+    private I loadUncached(String url, String key, Transform<I> transform) throws IOException {
+        ImageEventListener events = mEventListener;
+        boolean tracing = events != ImageEventListener.NONE;
+        I source = null;
+        ImageHttp.Result response = null;
+        String contentType = null;
+        if (transform != null) {
+            source = get(url);
+        }
+        if (source == null) {
+            long start = tracing ? System.nanoTime() : 0;
+            response = fetch(url);
+            if (tracing) {
+                long now = System.nanoTime();
+                events.onStage(url, ImageEventListener.STAGE_FETCH, now - start);
+                start = now;
+            }
+            contentType = ImageHttp.contentTypeOf(response.contentType, response.data);
+            source = mCodec.decode(response.data, 0, response.data.length);
+            if (tracing) {
+                events.onStage(url, ImageEventListener.STAGE_DECODE, System.nanoTime() - start);
+            }
+        }
+        if (source == null) {
+            return null;
+        }
+        if (transform == null) {
+            put(url, source, response);
+            return source;
+        }
+        long start = tracing ? System.nanoTime() : 0;
+        I result = transform.apply(source);
+        if (tracing) {
+            events.onStage(url, ImageEventListener.STAGE_TRANSFORM, System.nanoTime() - start);
+        }
+        // 变换结果要重新编码，按源图类型选格式；原图从缓存来时不知道类型，用默认格式
+        mMemoryCache.put(key, result);
+        if (mDiskCache != null) {
+            mDiskCache.put(key, result, null, null, contentType);
+            if (response != null) {
+                mDiskCache.put(url, source, response.meta, response.data, null);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量加载用：查缓存但结果不放进内存缓存，网络取到的只把原始字节交给磁盘缓存，
+     * 写队列里不留解码后的图；这样内存占用只和同时在途的个数有关，和批量大小无关
+     */
+    public I loadUnretained(String url, String key, Transform<I> transform) throws IOException {
+        I image = getFromMemory(key);
+        if (image != null) {
+            return image;
+        }
+        if (mDiskCache == null) {
+            return load(url, key, transform, true);
+        }
+        image = getFromDisk(key, false);
+        if (image != null) {
+            return image;
+        }
+        I source = null;
+        if (transform != null) {
+            source = getFromDisk(url, false);
+        }
+        if (source == null) {
+            ImageHttp.Result response = fetch(url);
+            source = mCodec.decode(response.data, 0, response.data.length);
+            if (source == null) {
+                return null;
+            }
+            mDiskCache.putBytes(url, response.data, response.meta);
+        }
+        return transform != null ? transform.apply(source) : source;
+    }
+
+    /**
+     * 预加载单个 url，已缓存的跳过，返回新写入缓存的字节数
+     */
+    public long warm(String url, boolean toMemory) throws IOException {
+        if (mMemoryCache.get(url) != null) {
+            return 0;
+        }
+        if (mDiskCache != null && mDiskCache.contains(url)) {
+            if (!toMemory) {
+                return 0;
+            }
+            // 磁盘有，get 时会放进内存
+            I image = get(url);
+            return image != null ? mCodec.sizeOf(image) : 0;
+        }
+        ImageHttp.Result response = fetch(url);
+        I image = mCodec.decode(response.data, 0, response.data.length);
+        if (image == null) {
+            return 0;
+        }
+        if (mDiskCache == null) {
+            mMemoryCache.put(url, image);
+            return response.data.length;
+        }
+        mDiskCache.put(url, image, response.meta, response.data, null);
+        if (toMemory) {
+            mMemoryCache.put(url, image);
+            return response.data.length + mCodec.sizeOf(image);
+        }
+        return response.data.length;
+    }
+
+    /**
+     * 要读磁盘的任务从这里提交：磁盘层还没打开完时排到打开之后，不占着工作线程等，
+     * 主线程上也不用建线程池
+     */
+    public void execute(Runnable r) {
+        if (mDiskCache != null) {
+            mDiskCache.executeWhenOpen(r);
+        } else {
+            ThreadPoolManager.getInstance().execute(r);
+        }
+    }
+
+    /**
+     * 在 {@link ThreadPoolManager} 的线程池里加载
+     */
+    public void loadAsync(final String url, final Callback<I> callback) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                I image;
+                try {
+                    image = load(url);
+                } catch (IOException | RuntimeException e) {
+                    callback.onFailed(url, e);
+                    return;
+                }
+                callback.onLoaded(url, image);
+            }
+        });
+    }
+
+    /**
+     * @param response 网络响应，磁盘缓存直接存它的原始字节，不重新编码；可为 null
+     */
+    private void put(String url, I image, ImageHttp.Result response) {
+        mMemoryCache.put(url, image);
+        if (mDiskCache != null) {
+            mDiskCache.put(url, image, response != null ? response.meta : null,
+                    response != null ? response.data : null, null);
+        }
+    }
+
+    private ImageHttp.Result fetch(String url) throws IOException {
+        ImageHttp.Result response = mHttp.fetch(url, null);
+        mNetworkLoads.incrementAndGet();
+        mNetworkBytes.addAndGet(response.data.length);
+        return response;
+    }
+
+    /**
+     * 磁盘条目过期，后台带条件请求校验：304 只刷新过期时间，200 则替换缓存，
+     * 本次显示仍用旧图；同一 url 已在校验时不重复发
+     */
+    private void revalidate(final String url, final HttpMeta meta) {
+        final Long started = System.nanoTime();
+        Long previous = mRevalidating.putIfAbsent(url, started);
+        if (previous != null) {
+            if (started - previous < REVALIDATE_COALESCE_NANOS || !mRevalidating.replace(url, previous, started)) {
+                return;
+            }
+        }
+        ThreadPoolManager.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ImageHttp.Result response = mHttp.fetch(url, meta);
+                    if (response.isNotModified()) {
+                        mDiskCache.updateMeta(url, response.meta);
+                        return;
+                    }
+                    I image = mCodec.decode(response.data, 0, response.data.length);
+                    if (image != null) {
+                        put(url, image, response);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    mRevalidating.remove(url, started);
+                }
+            }
+        });
+    }
+
+    public ImageCodec<I> getCodec() {
+        return mCodec;
+    }
+
+    public ImageCache<I> getMemoryCache() {
+        return mMemoryCache;
+    }
+
+    /**
+     * 可为 null
+     */
+    public DiskImageCache<I> getDiskCache() {
+        return mDiskCache;
+    }
+
+    public ImageHttp getHttp() {
+        return mHttp;
+    }
+
+    public long getMemoryHits() {
+        return mMemoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return mDiskHits.get();
+    }
+
+    public long getNetworkLoads() {
+        return mNetworkLoads.get();
+    }
+
+    public long getNetworkBytes() {
+        return mNetworkBytes.get();
+    }
+}
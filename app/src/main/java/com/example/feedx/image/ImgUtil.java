@@ -5,15 +5,83 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 
+import com.example.feedx.pool.Scratch;
+
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 感觉这些模块可以用在其他模块，所以抽出来了
  */
 public class ImgUtil {
 
+    /**
+     * 本地编码（变换结果等）用的格式和质量，默认有损 WebP，比 PNG 小很多
+     */
+    private static volatile Encoding sDefaultEncoding = new Encoding(Bitmap.CompressFormat.WEBP, 80);
+    /**
+     * 按源图 Content-Type 单独设置的格式，没有的用默认；
+     * PNG 源多是图标、截图这类硬边缘的图，默认用高质量 WebP，免得边缘压糊
+     */
+    private static final Map<String, Encoding> sEncodings = new ConcurrentHashMap<>();
+    private static final Encoding PNG = new Encoding(Bitmap.CompressFormat.PNG, 100);
+
+    static {
+        sEncodings.put("image/png", new Encoding(Bitmap.CompressFormat.WEBP, 100));
+    }
+
+    private static final class Encoding {
+        final Bitmap.CompressFormat format;
+        final int quality;
+
+        Encoding(Bitmap.CompressFormat format, int quality) {
+            this.format = format;
+            this.quality = Math.max(0, Math.min(quality, 100));
+        }
+    }
+
+    /**
+     * 设置默认的本地编码格式；选 JPEG 时带透明通道的图仍用 PNG，免得透明区域变黑
+     */
+    public static void setEncodeFormat(Bitmap.CompressFormat format, int quality) {
+        sDefaultEncoding = new Encoding(format, quality);
+    }
+
+    /**
+     * 源图是 contentType（如 "image/png"）时用的格式，format 为 null 时去掉，回到默认
+     */
+    public static void setEncodeFormat(String contentType, Bitmap.CompressFormat format, int quality) {
+        String type = ImageHttp.mimeType(contentType);
+        if (type == null) {
+            return;
+        }
+        if (format == null) {
+            sEncodings.remove(type);
+        } else {
+            sEncodings.put(type, new Encoding(format, quality));
+        }
+    }
+
+    /**
+     * 先按源图类型，再按图片内容：透明的 WebP 可以直接带 alpha，JPEG 不行就退回 PNG
+     */
+    private static Encoding encodingFor(Bitmap bm, String contentType) {
+        String type = ImageHttp.mimeType(contentType);
+        Encoding encoding = type != null ? sEncodings.get(type) : null;
+        if (encoding == null) {
+            encoding = sDefaultEncoding;
+        }
+        if (encoding.format == Bitmap.CompressFormat.JPEG && bm.hasAlpha()) {
+            return PNG;
+        }
+        return encoding;
+    }
+
     /**
      * MD5
      */
@@ -29,6 +97,21 @@ public class ImgUtil {
         return cacheKey;
     }
 
+    /**
+     * 按内容做 SHA-1，相同的图片字节得到相同的 key
+     */
+    public static String hashKeyForContent(byte[] data) {
+        String cacheKey;
+        try {
+            final MessageDigest mDigest = MessageDigest.getInstance("SHA-1");
+            mDigest.update(data);
+            cacheKey = bytesToHexString(mDigest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            cacheKey = String.valueOf(Arrays.hashCode(data));
+        }
+        return cacheKey;
+    }
+
     public static String bytesToHexString(byte[] bytes) {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < bytes.length; i++) {
@@ -42,14 +125,35 @@ public class ImgUtil {
     }
 
     /**
-     * 把Bitmap转Byte
+     * 把Bitmap转Byte，格式见 {@link #setEncodeFormat}
      */
     public static byte[] bitmap2Bytes(Bitmap bm) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        bm.compress(Bitmap.CompressFormat.PNG, 100, baos);
+        return bitmap2Bytes(bm, null);
+    }
+
+    /**
+     * @param contentType 源图的 Content-Type，不知道时为 null
+     */
+    public static byte[] bitmap2Bytes(Bitmap bm, String contentType) {
+        // 工作线程上编码进线程的输出缓冲，只在最后复制一次，不用边写边扩容
+        Scratch scratch = Scratch.current();
+        ByteArrayOutputStream baos = scratch != null ? scratch.output() : new ByteArrayOutputStream();
+        compress(bm, contentType, baos);
         return baos.toByteArray();
     }
 
+    /**
+     * 按 {@link #setEncodeFormat} 的格式写到 out
+     */
+    public static boolean compress(Bitmap bm, OutputStream out) {
+        return compress(bm, null, out);
+    }
+
+    public static boolean compress(Bitmap bm, String contentType, OutputStream out) {
+        Encoding encoding = encodingFor(bm, contentType);
+        return bm.compress(encoding.format, encoding.quality, out);
+    }
+
     /**
      * 获取应用版本
      */
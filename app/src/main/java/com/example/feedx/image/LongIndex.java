@@ -0,0 +1,198 @@
+package com.example.feedx.image;
+
+import java.util.Arrays;
+
+/**
+ * {@link SegmentDiskCache} 的内存索引：64 位 key -> (位置, 长度)，开放寻址 + 线性探测，
+ * 全部是基本类型数组，每个条目约 21 字节，没有对象头和字符串；
+ * 不是线程安全的，由调用方加锁
+ */
+class LongIndex {
+
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] mKeys;
+    private long[] mLocations;
+    private int[] mLengths;
+    /**
+     * 最近被访问过，淘汰时给第二次机会
+     */
+    private boolean[] mReferenced;
+    private int mSize;
+    /**
+     * 已删除的槽位数，和 mSize 一起决定何时重建
+     */
+    private int mDeleted;
+
+    LongIndex(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    /**
+     * 0 和 -1 留作空槽和删除标记
+     */
+    static long normalize(long key) {
+        return key == EMPTY || key == DELETED ? 1 : key;
+    }
+
+    private static int capacityFor(int expected) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expected) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mLocations = new long[capacity];
+        mLengths = new int[capacity];
+        mReferenced = new boolean[capacity];
+        mSize = 0;
+        mDeleted = 0;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * 返回槽位，不存在返回 -1
+     */
+    private int find(long key) {
+        int mask = mKeys.length - 1;
+        int i = mix(key) & mask;
+        for (;;) {
+            long k = mKeys[i];
+            if (k == EMPTY) {
+                return -1;
+            }
+            if (k == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean contains(long key) {
+        return find(normalize(key)) >= 0;
+    }
+
+    /**
+     * 不存在返回 -1
+     */
+    long location(long key) {
+        int i = find(normalize(key));
+        return i >= 0 ? mLocations[i] : -1;
+    }
+
+    /**
+     * 取位置并标记为最近访问，不存在返回 -1
+     */
+    long touch(long key) {
+        int i = find(normalize(key));
+        if (i < 0) {
+            return -1;
+        }
+        mReferenced[i] = true;
+        return mLocations[i];
+    }
+
+    int length(long key) {
+        int i = find(normalize(key));
+        return i >= 0 ? mLengths[i] : -1;
+    }
+
+    boolean isReferenced(long key) {
+        int i = find(normalize(key));
+        return i >= 0 && mReferenced[i];
+    }
+
+    /**
+     * 插入或覆盖，覆盖时清掉访问标记
+     */
+    void put(long key, long location, int length) {
+        key = normalize(key);
+        if ((mSize + mDeleted + 1) > mKeys.length * LOAD_FACTOR) {
+            rehash(mSize + 1 > mKeys.length * LOAD_FACTOR / 2 ? mKeys.length << 1 : mKeys.length);
+        }
+        int mask = mKeys.length - 1;
+        int i = mix(key) & mask;
+        int firstDeleted = -1;
+        for (;;) {
+            long k = mKeys[i];
+            if (k == key) {
+                break;
+            }
+            if (k == EMPTY) {
+                if (firstDeleted >= 0) {
+                    i = firstDeleted;
+                    mDeleted--;
+                }
+                mKeys[i] = key;
+                mSize++;
+                break;
+            }
+            if (k == DELETED && firstDeleted < 0) {
+                firstDeleted = i;
+            }
+            i = (i + 1) & mask;
+        }
+        mLocations[i] = location;
+        mLengths[i] = length;
+        mReferenced[i] = false;
+    }
+
+    /**
+     * 删除，返回是否存在
+     */
+    boolean remove(long key) {
+        int i = find(normalize(key));
+        if (i < 0) {
+            return false;
+        }
+        mKeys[i] = DELETED;
+        mReferenced[i] = false;
+        mSize--;
+        mDeleted++;
+        return true;
+    }
+
+    void clear() {
+        Arrays.fill(mKeys, EMPTY);
+        Arrays.fill(mReferenced, false);
+        mSize = 0;
+        mDeleted = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = mKeys;
+        long[] locations = mLocations;
+        int[] lengths = mLengths;
+        boolean[] referenced = mReferenced;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < keys.length; j++) {
+            long k = keys[j];
+            if (k == EMPTY || k == DELETED) {
+                continue;
+            }
+            int i = mix(k) & mask;
+            while (mKeys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            mKeys[i] = k;
+            mLocations[i] = locations[j];
+            mLengths[i] = lengths[j];
+            mReferenced[i] = referenced[j];
+            mSize++;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.feedx.image;
+
+/**
+ * 内存缓存的平台无关部分：按 {@link ImageCodec#sizeOf} 计容量（KB）的 LRU，
+ * 可选记录访问热度；Android 上由 {@link MemoryCache} 再加上按系统内存级别收缩
+ */
+public class LruImageCache<I> implements ImageCache<I> {
+
+    private final SizedLruCache<String, I> mMemoryCache;
+    /**
+     * 初始容量（KB），trim 之后据此恢复
+     */
+    private final int mMaxSize;
+    /**
+     * 可选，记录访问热度，进入后台时保存
+     */
+    private volatile HotSet mHotSet;
+
+    /**
+     * 容量为当前进程可用内存的 1/8
+     */
+    public LruImageCache(ImageCodec<I> codec) {
+        this(codec, (int) (Runtime.getRuntime().maxMemory() / 1024 / 8));
+    }
+
+    /**
+     * @param maxSize 容量，KB
+     */
+    public LruImageCache(final ImageCodec<I> codec, int maxSize) {
+        mMaxSize = maxSize;
+        mMemoryCache = new SizedLruCache<String, I>(maxSize) {
+
+            @Override
+            protected int sizeOf(String key, I image) {
+                return codec.sizeOf(image) / 1024;
+            }
+        };
+    }
+
+    public void setHotSet(HotSet hotSet) {
+        mHotSet = hotSet;
+    }
+
+    HotSet getHotSet() {
+        return mHotSet;
+    }
+
+    /**
+     * 初始容量（KB）
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    @Override
+    public I get(String url) {
+        I image = mMemoryCache.get(url);
+        HotSet hotSet = mHotSet;
+        if (image != null && hotSet != null) {
+            hotSet.record(url);
+        }
+        return image;
+    }
+
+    /**
+     * 未命中后加载出来的 put 也算一次访问
+     */
+    @Override
+    public void put(String url, I image) {
+        mMemoryCache.put(url, image);
+        HotSet hotSet = mHotSet;
+        if (hotSet != null) {
+            hotSet.record(url);
+        }
+    }
+
+    /**
+     * 启动预热用，不算访问，已有的不覆盖；返回是否放入
+     */
+    boolean warm(String url, I image) {
+        if (mMemoryCache.get(url) != null) {
+            return false;
+        }
+        mMemoryCache.put(url, image);
+        return true;
+    }
+
+    public void clear() {
+        mMemoryCache.evictAll();
+    }
+
+    /**
+     * 恢复初始容量，不会主动加载任何东西
+     */
+    public void restore() {
+        mMemoryCache.resize(mMaxSize);
+    }
+
+    protected void shrinkTo(int size) {
+        // resize 会同步淘汰到新容量以内
+        if (size < mMemoryCache.maxSize()) {
+            mMemoryCache.resize(Math.max(size, 1));
+        }
+    }
+}
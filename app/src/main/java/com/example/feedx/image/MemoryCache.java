@@ -1,32 +1,43 @@
 package com.example.feedx.image;
 
+import android.content.ComponentCallbacks2;
 import android.graphics.Bitmap;
-import android.util.LruCache;
 
-public class MemoryCache implements ImageCache {
+import com.example.feedx.pool.ThreadPoolManager;
 
-    private LruCache<String,Bitmap> mMemoryCache;
+public class MemoryCache extends LruImageCache<Bitmap> {
 
     public MemoryCache() {
-        int maxMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
-        // LruCache 的缓存大小，一般为当前进程可用容量的1/8
-        int cacheSize = maxMemory / 8;
-        mMemoryCache = new LruCache<String, Bitmap>(cacheSize) {
-
-            @Override
-            protected int sizeOf(String key, Bitmap bitmap) {
-                return bitmap.getRowBytes() * bitmap.getHeight() / 1024;
-            }
-        };
-    }
-
-    @Override
-    public Bitmap get(String url) {
-        return mMemoryCache.get(url);
+        super(BitmapCodec.INSTANCE);
     }
 
-    @Override
-    public void put(String url, Bitmap bmp) {
-        mMemoryCache.put(url,bmp);
+    /**
+     * 按 {@link ComponentCallbacks2} 的级别缩小容量，进入后台则直接清空；
+     * 只缩不扩，恢复见 {@link #restore()}
+     */
+    public void trimMemory(int level) {
+        final HotSet hotSet = getHotSet();
+        if (hotSet != null && level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            // 统计在 HotSet 里，和缓存清空互不影响
+            ThreadPoolManager.getInstance().execute(new Runnable() {
+                @Override
+                public void run() {
+                    hotSet.save();
+                }
+            });
+        }
+        int maxSize = getMaxSize();
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+            shrinkTo(maxSize / 4);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            shrinkTo(maxSize / 2);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            shrinkTo(maxSize / 4);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            shrinkTo(maxSize / 2);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            shrinkTo(maxSize * 3 / 4);
+        }
     }
 }
@@ -0,0 +1,148 @@
+package com.example.feedx.image;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.feedx.pool.Scratch;
+import com.example.feedx.pool.ThreadPoolManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 响应系统 onTrimMemory：按级别缩小各内存缓存、减少线程池常驻线程、释放工作线程的缓冲；
+ * 前台的 trim 一段时间没有新的就恢复原容量，进入后台的 trim 等下一个 Activity onStart 才恢复，
+ * 不在后台把刚让出的内存又占回来；
+ * 全进程一个，注册在 Application 上，缓存用弱引用持有，不影响回收
+ */
+public class MemoryTrimmer implements ComponentCallbacks2, Application.ActivityLifecycleCallbacks {
+
+    /**
+     * 前台最后一次 trim 之后多久恢复
+     */
+    private static final long RESTORE_DELAY = 60 * 1000;
+
+    private static MemoryTrimmer sInstance;
+
+    public static synchronized MemoryTrimmer install(Context context) {
+        if (sInstance == null) {
+            sInstance = new MemoryTrimmer();
+            Context appContext = context.getApplicationContext();
+            appContext.registerComponentCallbacks(sInstance);
+            if (appContext instanceof Application) {
+                ((Application) appContext).registerActivityLifecycleCallbacks(sInstance);
+            }
+        }
+        return sInstance;
+    }
+
+    private final Map<MemoryCache, Boolean> mCaches = new WeakHashMap<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mRestore = new Runnable() {
+        @Override
+        public void run() {
+            if (!mWaitForeground) {
+                restore();
+            }
+        }
+    };
+    /**
+     * 收到过后台级别（>= UI_HIDDEN）的 trim，回到前台前不恢复
+     */
+    private volatile boolean mWaitForeground;
+
+    public synchronized void register(MemoryCache cache) {
+        mCaches.put(cache, Boolean.TRUE);
+    }
+
+    public synchronized void unregister(MemoryCache cache) {
+        mCaches.remove(cache);
+    }
+
+    private synchronized List<MemoryCache> caches() {
+        return new ArrayList<>(mCaches.keySet());
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        for (MemoryCache cache : caches()) {
+            cache.trimMemory(level);
+        }
+        ThreadPoolManager pool = ThreadPoolManager.getInstance();
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            Scratch.trim();
+        }
+        if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            // 界面不可见（>= UI_HIDDEN）或前台极度紧张，只留一个常驻线程
+            pool.setCorePoolSize(1);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            pool.setCorePoolSize(ThreadPoolManager.CORE_POOL_SIZE / 2);
+        }
+        mHandler.removeCallbacks(mRestore);
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            mWaitForeground = true;
+        } else if (!mWaitForeground) {
+            mHandler.postDelayed(mRestore, RESTORE_DELAY);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        if (mWaitForeground) {
+            restore();
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+    }
+
+    /**
+     * 恢复容量和线程数，只是放开上限，不会主动加载或创建线程
+     */
+    public void restore() {
+        mHandler.removeCallbacks(mRestore);
+        mWaitForeground = false;
+        for (MemoryCache cache : caches()) {
+            cache.restore();
+        }
+        ThreadPoolManager.getInstance().restoreCorePoolSize();
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.feedx.image;
+
+import com.example.feedx.pool.TaggedTask;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一次预加载，由 {@link ImageLoader#prefetch} 创建，
+ * 同时最多占用 maxConcurrent 个线程，剩下的排队，不会把屏幕上的加载挤掉；
+ * ImageLoader 上预加载了还没显示的字节数达到预算（多次预加载共用）或被 cancel 后自动停止；
+ * 任务带 ImageLoader 的 tag，{@link ImageLoader#cancelAll()} 也会停掉它
+ */
+public class Prefetch {
+
+    private final ImageLoader mLoader;
+    private final ArrayDeque<String> mPending;
+    private final int mMaxInFlight;
+    private final boolean mToMemory;
+    private final Object mTag;
+
+    private int mInFlight;
+    private long mLoadedBytes;
+    private volatile boolean mCancelled;
+
+    Prefetch(ImageLoader loader, List<String> urls, int maxConcurrent, boolean toMemory) {
+        mLoader = loader;
+        mPending = new ArrayDeque<>(urls);
+        mMaxInFlight = Math.max(1, maxConcurrent);
+        mToMemory = toMemory;
+        mTag = loader.getTag();
+    }
+
+    void start() {
+        schedule();
+    }
+
+    public void cancel() {
+        mCancelled = true;
+        synchronized (this) {
+            mPending.clear();
+        }
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public synchronized boolean isDone() {
+        return mInFlight == 0 && (mPending.isEmpty() || !mLoader.hasPrefetchBudget());
+    }
+
+    /**
+     * 本次预加载写入缓存的字节数
+     */
+    public synchronized long getLoadedBytes() {
+        return mLoadedBytes;
+    }
+
+    /**
+     * 在锁外提交，线程池取消任务时会回调 {@link Task#cancel()}，不能和这里互相等锁
+     */
+    private void schedule() {
+        List<Task> tasks = new ArrayList<>();
+        synchronized (this) {
+            while (!mCancelled && mInFlight < mMaxInFlight
+                    && !mPending.isEmpty() && mLoader.hasPrefetchBudget()) {
+                mInFlight++;
+                tasks.add(new Task(mPending.poll()));
+            }
+        }
+        for (Task task : tasks) {
+            try {
+                mLoader.execute(task);
+            } catch (RuntimeException e) {
+                task.release();
+                throw e;
+            }
+        }
+    }
+
+    private void onFinished(long bytes) {
+        synchronized (this) {
+            mInFlight--;
+            mLoadedBytes += bytes;
+        }
+        schedule();
+    }
+
+    /**
+     * 每个任务的名额只归还一次：执行完、还没执行就被取消或被线程池拒绝，三者先到者归还
+     */
+    private final class Task implements Runnable, TaggedTask {
+        private final String mUrl;
+        private final AtomicBoolean mReleased = new AtomicBoolean();
+        private final AtomicBoolean mStarted = new AtomicBoolean();
+
+        Task(String url) {
+            mUrl = url;
+        }
+
+        @Override
+        public void run() {
+            if (!mStarted.compareAndSet(false, true) || mReleased.get()) {
+                return;
+            }
+            long bytes = 0;
+            try {
+                bytes = load(mUrl);
+            } finally {
+                // load 抛 RuntimeException 时也要归还名额，否则后面的永远排不上
+                if (mReleased.compareAndSet(false, true)) {
+                    onFinished(bytes);
+                }
+            }
+        }
+
+        @Override
+        public Object getTag() {
+            return mTag;
+        }
+
+        /**
+         * 被 cancelAll 取消或被线程池拒绝：整个预加载停止，还没开始执行的归还名额
+         */
+        @Override
+        public void cancel() {
+            Prefetch.this.cancel();
+            if (!mStarted.get()) {
+                release();
+            }
+        }
+
+        void release() {
+            if (mReleased.compareAndSet(false, true)) {
+                onFinished(0);
+            }
+        }
+    }
+
+    /**
+     * 在工作线程里临时降低线程优先级，和屏幕上的加载抢 cpu 时让一让
+     */
+    private long load(String url) {
+        if (mCancelled) {
+            return 0;
+        }
+        Thread t = Thread.currentThread();
+        int priority = t.getPriority();
+        t.setPriority(Thread.MIN_PRIORITY);
+        try {
+            long bytes = mLoader.warm(url, mToMemory);
+            mLoader.onPrefetched(url, bytes);
+            return bytes;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            t.setPriority(priority);
+        }
+        return 0;
+    }
+}
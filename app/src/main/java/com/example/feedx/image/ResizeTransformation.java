@@ -0,0 +1,30 @@
+package com.example.feedx.image;
+
+import android.graphics.Bitmap;
+
+/**
+ * 缩放到指定宽高，不保持比例
+ */
+public class ResizeTransformation implements Transformation {
+
+    private final int mWidth;
+    private final int mHeight;
+
+    public ResizeTransformation(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    @Override
+    public Bitmap transform(Bitmap source) {
+        if (source.getWidth() == mWidth && source.getHeight() == mHeight) {
+            return source;
+        }
+        return Bitmap.createScaledBitmap(source, mWidth, mHeight, true);
+    }
+
+    @Override
+    public String key() {
+        return "resize(" + mWidth + "x" + mHeight + ")";
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.feedx.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Shader;
+
+/**
+ * 圆角，半径单位为像素
+ */
+public class RoundedCornersTransformation implements Transformation {
+
+    private final float mRadius;
+
+    public RoundedCornersTransformation(float radius) {
+        mRadius = radius;
+    }
+
+    @Override
+    public Bitmap transform(Bitmap source) {
+        Bitmap output = Bitmap.createBitmap(source.getWidth(), source.getHeight(), Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setShader(new BitmapShader(source, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+        Canvas canvas = new Canvas(output);
+        canvas.drawRoundRect(new RectF(0, 0, source.getWidth(), source.getHeight()), mRadius, mRadius, paint);
+        return output;
+    }
+
+    @Override
+    public String key() {
+        return "round(" + mRadius + ")";
+    }
+}
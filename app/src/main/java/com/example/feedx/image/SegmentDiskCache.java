@@ -0,0 +1,876 @@
+package com.example.feedx.image;
+
+import com.example.feedx.pool.OpenGate;
+import com.example.feedx.pool.Scratch;
+import com.example.feedx.pool.ThreadPoolManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 不依赖 DiskLruCache 的磁盘缓存，面向十万级条目：
+ * 数据按顺序追加到分段文件（默认每段 4MB），段写满后封存并写一个二进制索引文件；
+ * 内存索引是 {@link LongIndex}，url 取 64 位 hash，不存字符串；
+ * 超出容量时整段淘汰最老的段，段内最近访问过的条目搬到新段（第二次机会）；
+ * 有效数据不到一半的段在后台压缩：有效条目搬走后删除整段；
+ * 文件读写用 RandomAccessFile 而不是 FileChannel：线程池取消任务时会中断工作线程，
+ * FileChannel 读写中被中断会关掉通道，整段以后都不能用；
+ * 只依赖 {@link ImageCodec}，不依赖 Android
+ */
+public class SegmentDiskCache<I> implements DiskImageCache<I> {
+
+    private static final int MAGIC = 0x46584431;
+    /**
+     * magic + key + url 长度 + 数据长度
+     */
+    private static final int HEADER_SIZE = 4 + 8 + 2 + 4;
+    private static final int TOMBSTONE = -1;
+    /**
+     * 追加时不检查 key 原来的位置
+     */
+    private static final long ANY_LOCATION = -2;
+    private static final String DATA_SUFFIX = ".dat";
+    private static final String INDEX_SUFFIX = ".idx";
+    /**
+     * 有效数据占比低于这个值的封存段会被压缩
+     */
+    private static final float COMPACT_THRESHOLD = 0.5f;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    public static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private final File mDir;
+    private final long mMaxSize;
+    private final int mSegmentSize;
+    private final ImageCodec<I> mCodec;
+    private final CountDownLatch mOpened = new CountDownLatch(1);
+    private final OpenGate mGate = new OpenGate();
+
+    /**
+     * 以下字段都由 this 保护；要同时拿段的锁时先拿段的锁，再拿 this
+     */
+    private final TreeMap<Integer, Segment> mSegments = new TreeMap<>();
+    private final LongIndex mIndex = new LongIndex(1024);
+    private Segment mActive;
+    private long mTotalSize;
+    private boolean mMaintenanceScheduled;
+    private boolean mOpenFailed;
+
+    /**
+     * 默认 64MB，每段 4MB；Android 上 dir 一般用 DiskCache.getDiskCacheDir(context, "image_segments")
+     */
+    public SegmentDiskCache(File dir, ImageCodec<I> codec) {
+        this(dir, DEFAULT_MAX_SIZE, DEFAULT_SEGMENT_SIZE, codec);
+    }
+
+    /**
+     * 和 {@link DiskCache} 一样在单独线程打开，读写先等打开完成
+     */
+    public SegmentDiskCache(File dir, long maxSize, int segmentSize, ImageCodec<I> codec) {
+        mDir = dir;
+        mCodec = codec;
+        mMaxSize = maxSize;
+        mSegmentSize = segmentSize;
+        Thread opener = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    open();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    synchronized (SegmentDiskCache.this) {
+                        mOpenFailed = true;
+                    }
+                } finally {
+                    mOpened.countDown();
+                    mGate.open();
+                }
+            }
+        }, "SegmentDiskCache-open");
+        opener.setPriority(Thread.NORM_PRIORITY - 1);
+        opener.start();
+    }
+
+    @Override
+    public void executeWhenOpen(Runnable r) {
+        mGate.execute(r);
+    }
+
+    private boolean awaitOpen() {
+        try {
+            // 打开后不再经过 await，被取消（已中断）的任务也能读写
+            if (mOpened.getCount() > 0) {
+                mOpened.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        synchronized (this) {
+            return !mOpenFailed;
+        }
+    }
+
+    @Override
+    public I get(String url) {
+        // 在工作线程上直接从线程的读缓冲解码，不复制
+        ByteBuffer data = readData(url);
+        return data != null ? mCodec.decode(data.array(), data.arrayOffset() + data.position(), data.remaining())
+                : null;
+    }
+
+    /**
+     * 不记录校验信息，条目不会过期
+     */
+    @Override
+    public I get(String url, OnStaleListener onStale, ImageEventListener events) {
+        return get(url);
+    }
+
+    public byte[] getBytes(String url) {
+        ByteBuffer data = readData(url);
+        if (data == null) {
+            return null;
+        }
+        int start = data.arrayOffset() + data.position();
+        return Arrays.copyOfRange(data.array(), start, start + data.remaining());
+    }
+
+    /**
+     * 锁内只查索引，读文件在锁外，可以并发读；
+     * 返回的 position ~ limit 是数据部分，可能是线程的 {@link Scratch} 缓冲，只能马上用
+     */
+    private ByteBuffer readData(String url) {
+        if (!awaitOpen()) {
+            return null;
+        }
+        long key = hashKey64(url);
+        Segment segment;
+        long location;
+        int length;
+        synchronized (this) {
+            location = mIndex.touch(key);
+            if (location < 0) {
+                return null;
+            }
+            length = mIndex.length(key);
+            segment = mSegments.get(segmentOf(location));
+            if (segment == null) {
+                return null;
+            }
+        }
+        try {
+            ByteBuffer record = read(segment, offsetOf(location), length);
+            return parseData(record, key, url) ? record : null;
+        } catch (IOException e) {
+            // 段刚被淘汰或压缩删掉，当作未命中
+            return null;
+        }
+    }
+
+    @Override
+    public InputStream openStream(String url) {
+        byte[] data = getBytes(url);
+        return data != null ? new ByteArrayInputStream(data) : null;
+    }
+
+    @Override
+    public boolean contains(String url) {
+        if (!awaitOpen()) {
+            return false;
+        }
+        long key = hashKey64(url);
+        synchronized (this) {
+            return mIndex.contains(key);
+        }
+    }
+
+    @Override
+    public void put(final String url, final I image) {
+        mGate.execute(new Runnable() {
+            @Override
+            public void run() {
+                byte[] data = mCodec.encode(image);
+                if (data != null) {
+                    putBytes(url, data);
+                }
+            }
+        });
+    }
+
+    /**
+     * 编码格式由 codec 决定，contentType 和 meta 不用
+     */
+    @Override
+    public void put(final String url, I image, HttpMeta meta, final byte[] data, String contentType) {
+        if (data == null) {
+            put(url, image);
+            return;
+        }
+        mGate.execute(new Runnable() {
+            @Override
+            public void run() {
+                putBytes(url, data);
+            }
+        });
+    }
+
+    @Override
+    public void putBytes(String url, byte[] data, HttpMeta meta) {
+        putBytes(url, data);
+    }
+
+    public void putBytes(String url, byte[] data) {
+        if (!awaitOpen()) {
+            return;
+        }
+        long key = hashKey64(url);
+        try {
+            append(key, record(key, url, data), false, ANY_LOCATION);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        scheduleMaintenance();
+    }
+
+    @Override
+    public void updateMeta(String url, HttpMeta meta) {
+    }
+
+    public void remove(String url) {
+        if (!awaitOpen()) {
+            return;
+        }
+        long key = hashKey64(url);
+        synchronized (this) {
+            if (!mIndex.contains(key)) {
+                return;
+            }
+        }
+        try {
+            // 追加一条删除记录，重新打开时回放
+            append(key, record(key, url, null), true, ANY_LOCATION);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public int size() {
+        awaitOpen();
+        synchronized (this) {
+            return mIndex.size();
+        }
+    }
+
+    public long getTotalSize() {
+        awaitOpen();
+        synchronized (this) {
+            return mTotalSize;
+        }
+    }
+
+    public int getSegmentCount() {
+        awaitOpen();
+        synchronized (this) {
+            return mSegments.size();
+        }
+    }
+
+    public void flush() {
+        if (!awaitOpen()) {
+            return;
+        }
+        Segment active;
+        synchronized (this) {
+            active = mActive;
+        }
+        try {
+            if (active != null) {
+                active.sync();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void close() {
+        if (!awaitOpen()) {
+            return;
+        }
+        List<Segment> segments;
+        synchronized (this) {
+            segments = new ArrayList<>(mSegments.values());
+            mSegments.clear();
+            mIndex.clear();
+            mActive = null;
+            mOpenFailed = true;
+        }
+        // 段的锁在 this 之前拿，正在写的追加写完才关
+        for (Segment segment : segments) {
+            segment.close();
+        }
+    }
+
+    /**
+     * 把 record 的 position ~ limit 追加到当前段并更新索引；
+     * 追加都要先拿当前段的锁，所以仍按顺序落盘，写文件时不持有 this，读和查索引不用等磁盘；
+     * expected 不是 ANY_LOCATION 时，key 在索引里的位置已经变了就不写，返回 false
+     */
+    private boolean append(long key, ByteBuffer record, boolean tombstone, long expected) throws IOException {
+        int length = record.remaining();
+        for (;;) {
+            Segment active;
+            synchronized (this) {
+                active = mActive;
+            }
+            if (active == null) {
+                throw new IOException("cache closed");
+            }
+            synchronized (active) {
+                long offset;
+                synchronized (this) {
+                    if (active != mActive) {
+                        // 等锁期间已经换段或关闭，重来
+                        continue;
+                    }
+                    if (expected != ANY_LOCATION && mIndex.location(key) != expected) {
+                        return false;
+                    }
+                    offset = active.size;
+                }
+                if (offset > 0 && offset + length > mSegmentSize) {
+                    roll(active);
+                    continue;
+                }
+                active.write(offset, record.array(), record.arrayOffset() + record.position(), length);
+                synchronized (this) {
+                    if (active != mActive) {
+                        throw new IOException("cache closed");
+                    }
+                    active.size += length;
+                    active.entries.add(key, (int) offset, tombstone ? -length : length);
+                    mTotalSize += length;
+                    apply(active, key, (int) offset, length, tombstone);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 把一条记录应用到内存索引，维护各段的有效字节数
+     */
+    private void apply(Segment segment, long key, int offset, int length, boolean tombstone) {
+        long old = mIndex.location(key);
+        if (old >= 0) {
+            Segment oldSegment = mSegments.get(segmentOf(old));
+            if (oldSegment != null) {
+                oldSegment.liveBytes -= mIndex.length(key);
+            }
+        }
+        if (tombstone) {
+            mIndex.remove(key);
+            segment.tombstoneBytes += length;
+        } else {
+            mIndex.put(key, location(segment.id, offset), length);
+            segment.liveBytes += length;
+        }
+    }
+
+    /**
+     * 封存当前段：先换上新段，再 sync 并写二进制索引；调用方持有 sealed 的锁，不持有 this
+     */
+    private void roll(Segment sealed) throws IOException {
+        int id = sealed.id + 1;
+        Segment next = new Segment(id, new File(mDir, id + DATA_SUFFIX));
+        next.entries = new Entries();
+        synchronized (this) {
+            if (sealed != mActive) {
+                next.close();
+                next.file.delete();
+                throw new IOException("cache closed");
+            }
+            mSegments.put(id, next);
+            mActive = next;
+        }
+        sealed.sync();
+        writeIndex(sealed);
+        sealed.entries = null;
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Segment segment = new Segment(id, new File(mDir, id + DATA_SUFFIX));
+        segment.entries = new Entries();
+        mSegments.put(id, segment);
+        return segment;
+    }
+
+    private void open() throws IOException {
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            throw new IOException("mkdirs failed: " + mDir);
+        }
+        List<Integer> ids = new ArrayList<>();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(DATA_SUFFIX)) {
+                    try {
+                        ids.add(Integer.parseInt(name.substring(0, name.length() - DATA_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // 不是我们的文件
+                    }
+                }
+            }
+        }
+        Collections.sort(ids);
+        synchronized (this) {
+            for (int i = 0; i < ids.size(); i++) {
+                int id = ids.get(i);
+                boolean last = i == ids.size() - 1;
+                Segment segment = new Segment(id, new File(mDir, id + DATA_SUFFIX));
+                mSegments.put(id, segment);
+                File indexFile = new File(mDir, id + INDEX_SUFFIX);
+                Entries entries = !last && indexFile.exists() ? readIndex(indexFile) : null;
+                if (entries == null) {
+                    // 当前段或封存时被打断的段：扫描数据文件，截掉末尾不完整的记录
+                    entries = scan(segment);
+                    if (!last) {
+                        segment.entries = entries;
+                        writeIndex(segment);
+                        segment.entries = null;
+                    }
+                }
+                for (int j = 0; j < entries.count; j++) {
+                    int length = entries.lengths[j];
+                    apply(segment, entries.keys[j], entries.offsets[j], Math.abs(length), length < 0);
+                }
+                mTotalSize += segment.size;
+                if (last) {
+                    segment.entries = entries;
+                    mActive = segment;
+                }
+            }
+            if (mActive == null) {
+                mActive = createSegment(1);
+            }
+        }
+        scheduleMaintenance();
+    }
+
+    private void scheduleMaintenance() {
+        synchronized (this) {
+            if (mMaintenanceScheduled || !needsMaintenance()) {
+                return;
+            }
+            mMaintenanceScheduled = true;
+        }
+        ThreadPoolManager.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    maintain();
+                } finally {
+                    synchronized (SegmentDiskCache.this) {
+                        mMaintenanceScheduled = false;
+                    }
+                }
+                scheduleMaintenance();
+            }
+        });
+    }
+
+    private boolean needsMaintenance() {
+        return (mTotalSize > mMaxSize && mSegments.size() > 1) || pickCompaction() != null;
+    }
+
+    /**
+     * 先淘汰到容量以内，再压缩一个段；同一时间只有一个维护任务，段的删除只在这里发生
+     */
+    private void maintain() {
+        int rescues;
+        synchronized (this) {
+            rescues = mSegments.size();
+        }
+        for (;;) {
+            Segment oldest;
+            synchronized (this) {
+                if (mTotalSize <= mMaxSize || mSegments.size() <= 1) {
+                    break;
+                }
+                oldest = mSegments.firstEntry().getValue();
+            }
+            // 转过一圈还超容量说明热数据本身就放不下，不再给第二次机会
+            relocate(oldest, true, rescues-- > 0);
+        }
+        Segment victim;
+        synchronized (this) {
+            victim = pickCompaction();
+        }
+        if (victim != null) {
+            relocate(victim, false, false);
+        }
+    }
+
+    private Segment pickCompaction() {
+        for (Segment segment : mSegments.values()) {
+            if (segment != mActive && segment.size > 0
+                    && segment.liveBytes + segment.tombstoneBytes < segment.size * COMPACT_THRESHOLD) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 把封存段里还有效的记录搬到当前段，然后删掉整段；
+     * evict 时只在 rescue 为 true 时搬最近访问过的，其余直接丢弃；读文件都在锁外
+     */
+    private void relocate(Segment segment, boolean evict, boolean rescue) {
+        Entries entries;
+        try {
+            File indexFile = new File(mDir, segment.id + INDEX_SUFFIX);
+            entries = indexFile.exists() ? readIndex(indexFile) : null;
+            if (entries == null) {
+                entries = scan(segment);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            entries = new Entries();
+        }
+        boolean oldest;
+        synchronized (this) {
+            oldest = mSegments.firstKey() == segment.id;
+        }
+        for (int i = 0; i < entries.count; i++) {
+            long key = entries.keys[i];
+            int offset = entries.offsets[i];
+            int length = entries.lengths[i];
+            boolean tombstone = length < 0;
+            synchronized (this) {
+                if (tombstone) {
+                    // 更老的段里可能还有这个 key 的数据，删除记录要跟着搬；key 又被写过就不用了
+                    if (oldest || mIndex.contains(key)) {
+                        continue;
+                    }
+                } else {
+                    if (mIndex.location(key) != location(segment.id, offset)) {
+                        continue;
+                    }
+                    if (evict && !(rescue && mIndex.isReferenced(key))) {
+                        continue;
+                    }
+                }
+            }
+            ByteBuffer record;
+            try {
+                record = read(segment, offset, Math.abs(length));
+            } catch (IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+            try {
+                // 读文件期间可能又被写过或删掉，append 在当前段的锁里再确认一次
+                append(key, record, tombstone, tombstone ? -1 : location(segment.id, offset));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        synchronized (this) {
+            if (mActive == null) {
+                // 中途被关闭，没搬完的还在这个段里，留给下次打开
+                return;
+            }
+            // evict 时没搬走的条目从索引删掉
+            for (int i = 0; i < entries.count; i++) {
+                long key = entries.keys[i];
+                if (entries.lengths[i] > 0 && mIndex.location(key) == location(segment.id, entries.offsets[i])) {
+                    mIndex.remove(key);
+                }
+            }
+            mSegments.remove(segment.id);
+            mTotalSize -= segment.size;
+        }
+        segment.close();
+        new File(mDir, segment.id + INDEX_SUFFIX).delete();
+        segment.file.delete();
+    }
+
+    /**
+     * 顺序扫描数据文件得到条目，遇到不完整或损坏的记录就截断
+     */
+    private Entries scan(Segment segment) throws IOException {
+        Entries entries = new Entries();
+        long fileSize = segment.length();
+        long offset = 0;
+        byte[] headerBytes = new byte[HEADER_SIZE];
+        ByteBuffer header = ByteBuffer.wrap(headerBytes);
+        while (offset + HEADER_SIZE <= fileSize) {
+            segment.read(offset, headerBytes, 0, HEADER_SIZE);
+            header.clear();
+            int magic = header.getInt();
+            long key = header.getLong();
+            int urlLength = header.getShort() & 0xFFFF;
+            int dataLength = header.getInt();
+            if (magic != MAGIC || dataLength < TOMBSTONE) {
+                break;
+            }
+            long length = HEADER_SIZE + urlLength + Math.max(dataLength, 0);
+            if (offset + length > fileSize) {
+                break;
+            }
+            entries.add(key, (int) offset, dataLength == TOMBSTONE ? (int) -length : (int) length);
+            offset += length;
+        }
+        if (offset < fileSize) {
+            segment.truncate(offset);
+        }
+        segment.size = offset;
+        return entries;
+    }
+
+    /**
+     * 索引文件：条目数，然后每条 key(8) offset(4) length(4)，length 为负表示删除记录
+     */
+    private void writeIndex(Segment segment) throws IOException {
+        Entries entries = segment.entries;
+        File file = new File(mDir, segment.id + INDEX_SUFFIX);
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 8 * 1024));
+        try {
+            out.writeInt(entries.count);
+            for (int i = 0; i < entries.count; i++) {
+                out.writeLong(entries.keys[i]);
+                out.writeInt(entries.offsets[i]);
+                out.writeInt(entries.lengths[i]);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("rename index failed");
+        }
+    }
+
+    private static Entries readIndex(File file) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8 * 1024));
+            int count = in.readInt();
+            Entries entries = new Entries();
+            for (int i = 0; i < count; i++) {
+                entries.add(in.readLong(), in.readInt(), in.readInt());
+            }
+            return entries;
+        } catch (EOFException e) {
+            // 索引不完整，改为扫描数据文件
+            return null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 在工作线程上拼在线程的 {@link Scratch} 缓冲里，写完即可复用
+     */
+    private static ByteBuffer record(long key, String url, byte[] data) {
+        byte[] urlBytes = url.getBytes(UTF_8);
+        if (urlBytes.length > 0xFFFF) {
+            urlBytes = Arrays.copyOf(urlBytes, 0xFFFF);
+        }
+        int dataLength = data != null ? data.length : 0;
+        ByteBuffer buffer = allocate(HEADER_SIZE + urlBytes.length + dataLength);
+        buffer.putInt(MAGIC);
+        buffer.putLong(key);
+        buffer.putShort((short) urlBytes.length);
+        buffer.putInt(data != null ? data.length : TOMBSTONE);
+        buffer.put(urlBytes);
+        if (data != null) {
+            buffer.put(data);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 校验 key 和 url，64 位 hash 碰撞时按未命中处理；
+     * 通过时把 record 的 position ~ limit 收窄到数据部分，原地比较不复制
+     */
+    private static boolean parseData(ByteBuffer record, long key, String url) {
+        if (record.remaining() < HEADER_SIZE || record.getInt() != MAGIC || record.getLong() != key) {
+            return false;
+        }
+        int urlLength = record.getShort() & 0xFFFF;
+        int dataLength = record.getInt();
+        if (dataLength < 0 || urlLength + dataLength > record.remaining()) {
+            return false;
+        }
+        byte[] urlBytes = url.getBytes(UTF_8);
+        if (urlLength != Math.min(urlBytes.length, 0xFFFF)) {
+            return false;
+        }
+        byte[] array = record.array();
+        int start = record.arrayOffset() + record.position();
+        for (int i = 0; i < urlLength; i++) {
+            if (array[start + i] != urlBytes[i]) {
+                return false;
+            }
+        }
+        record.position(record.position() + urlLength);
+        record.limit(record.position() + dataLength);
+        return true;
+    }
+
+    /**
+     * 读出的 position ~ limit 是整条记录
+     */
+    private static ByteBuffer read(Segment segment, long offset, int length) throws IOException {
+        ByteBuffer buffer = allocate(length);
+        segment.read(offset, buffer.array(), buffer.arrayOffset(), length);
+        return buffer;
+    }
+
+    /**
+     * 工作线程上借用线程的 {@link Scratch} 缓冲，其他线程照常分配
+     */
+    private static ByteBuffer allocate(int length) {
+        Scratch scratch = Scratch.current();
+        return scratch != null ? ByteBuffer.wrap(scratch.buffer(length), 0, length) : ByteBuffer.allocate(length);
+    }
+
+    /**
+     * MD5 的前 8 字节，索引只存这个，不存 url
+     */
+    static long hashKey64(String key) {
+        try {
+            final MessageDigest mDigest = MessageDigest.getInstance("MD5");
+            byte[] digest = mDigest.digest(key.getBytes(UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (digest[i] & 0xFF);
+            }
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            return key.hashCode() * 0x9E3779B97F4A7C15L;
+        }
+    }
+
+    private static long location(int segment, int offset) {
+        return ((long) segment << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    private static class Segment {
+        final int id;
+        final File file;
+        /**
+         * seek 和读写要连在一起，都在 synchronized (this) 里
+         */
+        private final RandomAccessFile raf;
+        long size;
+        /**
+         * 索引仍指向本段的字节数
+         */
+        long liveBytes;
+        /**
+         * 删除记录的字节数，更老的段还在时它们也算有效，不参与压缩判断
+         */
+        long tombstoneBytes;
+        /**
+         * 只有当前段在内存里记条目，封存时写成索引文件
+         */
+        Entries entries;
+
+        Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            this.size = raf.length();
+        }
+
+        synchronized void read(long offset, byte[] b, int off, int len) throws IOException {
+            raf.seek(offset);
+            raf.readFully(b, off, len);
+        }
+
+        synchronized void write(long offset, byte[] b, int off, int len) throws IOException {
+            raf.seek(offset);
+            raf.write(b, off, len);
+        }
+
+        synchronized long length() throws IOException {
+            return raf.length();
+        }
+
+        synchronized void truncate(long length) throws IOException {
+            raf.setLength(length);
+        }
+
+        synchronized void sync() throws IOException {
+            raf.getFD().sync();
+        }
+
+        synchronized void close() {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static class Entries {
+        int count;
+        long[] keys = new long[64];
+        int[] offsets = new int[64];
+        int[] lengths = new int[64];
+
+        void add(long key, int offset, int length) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            keys[count] = key;
+            offsets[count] = offset;
+            lengths[count] = length;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.feedx.image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按容量淘汰的 LRU，用法和 android.util.LruCache 一样（覆盖 {@link #sizeOf} 决定每项大小，默认 1），
+ * 不依赖 Android，纯 JVM 上也能用；所有方法线程安全
+ */
+public class SizedLruCache<K, V> {
+
+    /**
+     * accessOrder，最老的在前
+     */
+    private final LinkedHashMap<K, V> mMap = new LinkedHashMap<>(16, 0.75f, true);
+    private int mMaxSize;
+    private int mSize;
+
+    public SizedLruCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+    }
+
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+
+    public final synchronized V get(K key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        return mMap.get(key);
+    }
+
+    /**
+     * 返回被替换的旧值
+     */
+    public final synchronized V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        mSize += safeSizeOf(key, value);
+        V previous = mMap.put(key, value);
+        if (previous != null) {
+            mSize -= safeSizeOf(key, previous);
+        }
+        trimToSize(mMaxSize);
+        return previous;
+    }
+
+    public final synchronized V remove(K key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        V previous = mMap.remove(key);
+        if (previous != null) {
+            mSize -= safeSizeOf(key, previous);
+        }
+        return previous;
+    }
+
+    public final synchronized void evictAll() {
+        mMap.clear();
+        mSize = 0;
+    }
+
+    /**
+     * 改容量，变小时同步淘汰到新容量以内
+     */
+    public final synchronized void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public final synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * 当前总大小，单位和 {@link #sizeOf} 一致
+     */
+    public final synchronized int size() {
+        return mSize;
+    }
+
+    private void trimToSize(int maxSize) {
+        Iterator<Map.Entry<K, V>> it = mMap.entrySet().iterator();
+        while (mSize > maxSize && it.hasNext()) {
+            Map.Entry<K, V> eldest = it.next();
+            mSize -= safeSizeOf(eldest.getKey(), eldest.getValue());
+            it.remove();
+        }
+    }
+
+    private int safeSizeOf(K key, V value) {
+        int size = sizeOf(key, value);
+        if (size < 0) {
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.feedx.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import com.example.feedx.pool.ThreadPoolManager;
+import com.example.feedx.pool.XAsync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 超大图（长图、全景）的分块解码，由 {@link ImageLoader#openTiled} 创建：
+ * 只解可见区域的块，按显示比例选采样率，块在线程池里解码，
+ * 解出的块按 (url, 采样率, x, y) 放进共享的块缓存，内存占用和原图尺寸无关；
+ * {@link #requestVisible} 在主线程调用，视口中心的块先解
+ */
+public class TiledImage {
+
+    /**
+     * 每块解出来的边长（像素），和采样率无关
+     */
+    public static final int TILE_SIZE = 512;
+
+    /**
+     * 排队超过这个时间的块多半已经滑出视口
+     */
+    private static final long TILE_DEADLINE_MILLIS = 2 * 1000;
+
+    /**
+     * 主线程回调
+     */
+    public interface TileCallback {
+        void onTile(Tile tile);
+    }
+
+    public static class Tile {
+        /**
+         * 采样率，1、2、4 ...
+         */
+        public final int sampleSize;
+        public final int x;
+        public final int y;
+        /**
+         * 在原图坐标下覆盖的区域
+         */
+        public final Rect rect;
+        public final Bitmap bitmap;
+
+        Tile(int sampleSize, int x, int y, Rect rect, Bitmap bitmap) {
+            this.sampleSize = sampleSize;
+            this.x = x;
+            this.y = y;
+            this.rect = rect;
+            this.bitmap = bitmap;
+        }
+    }
+
+    /**
+     * 块缓存的 key
+     */
+    static final class TileKey {
+        final String url;
+        final int sampleSize;
+        final int x;
+        final int y;
+
+        TileKey(String url, int sampleSize, int x, int y) {
+            this.url = url;
+            this.sampleSize = sampleSize;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) o;
+            return sampleSize == other.sampleSize && x == other.x && y == other.y && url.equals(other.url);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = url.hashCode();
+            h = 31 * h + sampleSize;
+            h = 31 * h + x;
+            return 31 * h + y;
+        }
+    }
+
+    /**
+     * 块缓存，按 KB 计容量，多个 TiledImage 共用
+     */
+    static SizedLruCache<TileKey, Bitmap> newTileCache(int maxSize) {
+        return new SizedLruCache<TileKey, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(TileKey key, Bitmap bitmap) {
+                return BitmapCodec.INSTANCE.sizeOf(bitmap) / 1024;
+            }
+        };
+    }
+
+    private final String mUrl;
+    private final BitmapRegionDecoder mDecoder;
+    private final int mWidth;
+    private final int mHeight;
+    private final SizedLruCache<TileKey, Bitmap> mTileCache;
+    /**
+     * 已提交还没回调的块，只在主线程读写
+     */
+    private final HashMap<TileKey, XAsync<Bitmap>> mPending = new HashMap<>();
+    private volatile boolean mRecycled;
+
+    TiledImage(String url, BitmapRegionDecoder decoder, SizedLruCache<TileKey, Bitmap> tileCache) {
+        mUrl = url;
+        mDecoder = decoder;
+        mWidth = decoder.getWidth();
+        mHeight = decoder.getHeight();
+        mTileCache = tileCache;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 显示比例（显示像素 / 原图像素）对应的采样率：不超过 1 / scale 的最大 2 的幂
+     */
+    public static int sampleSizeFor(float scale) {
+        int sampleSize = 1;
+        while (scale > 0 && sampleSize * 2 * scale <= 1f) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * 块 (x, y) 在原图坐标下的区域，超出原图的部分裁掉
+     */
+    public Rect tileRect(int sampleSize, int x, int y) {
+        int span = TILE_SIZE * sampleSize;
+        int left = x * span;
+        int top = y * span;
+        return new Rect(left, top, Math.min(left + span, mWidth), Math.min(top + span, mHeight));
+    }
+
+    /**
+     * 同步解一块，先查块缓存，不能在主线程调用；已回收或解码失败返回 null
+     */
+    public Bitmap decodeTile(int sampleSize, int x, int y) {
+        TileKey key = new TileKey(mUrl, sampleSize, x, y);
+        Bitmap bitmap = mTileCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        if (mRecycled) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        try {
+            // BitmapRegionDecoder 内部加锁，同一张图的块实际是串行解的
+            bitmap = mDecoder.decodeRegion(tileRect(sampleSize, x, y), options);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // 区域越界或解码器已回收
+            return null;
+        }
+        if (bitmap != null) {
+            mTileCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 请求视口内的块：缓存里有的立即回调，其余提交到线程池，离视口中心近的先提交；
+     * 上次请求里已不可见的块取消掉；主线程调用
+     *
+     * @param visible 视口在原图坐标下的区域
+     * @param scale   显示比例，决定采样率
+     */
+    public void requestVisible(Rect visible, float scale, final TileCallback callback) {
+        if (mRecycled || visible.isEmpty() || visible.right <= 0 || visible.bottom <= 0
+                || visible.left >= mWidth || visible.top >= mHeight) {
+            return;
+        }
+        final int sampleSize = sampleSizeFor(scale);
+        int span = TILE_SIZE * sampleSize;
+        int left = Math.max(0, visible.left) / span;
+        int top = Math.max(0, visible.top) / span;
+        int right = (Math.min(visible.right, mWidth) - 1) / span;
+        int bottom = (Math.min(visible.bottom, mHeight) - 1) / span;
+
+        List<TileKey> wanted = new ArrayList<>();
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++) {
+                wanted.add(new TileKey(mUrl, sampleSize, x, y));
+            }
+        }
+        final float cx = (left + right) / 2f;
+        final float cy = (top + bottom) / 2f;
+        Collections.sort(wanted, new Comparator<TileKey>() {
+            @Override
+            public int compare(TileKey a, TileKey b) {
+                return Float.compare(distance(a, cx, cy), distance(b, cx, cy));
+            }
+        });
+
+        Iterator<Map.Entry<TileKey, XAsync<Bitmap>>> it = mPending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<TileKey, XAsync<Bitmap>> entry = it.next();
+            if (!wanted.contains(entry.getKey())) {
+                entry.getValue().cancel();
+                it.remove();
+            }
+        }
+
+        for (final TileKey key : wanted) {
+            Bitmap cached = mTileCache.get(key);
+            if (cached != null) {
+                callback.onTile(new Tile(sampleSize, key.x, key.y, tileRect(sampleSize, key.x, key.y), cached));
+                continue;
+            }
+            if (mPending.containsKey(key)) {
+                continue;
+            }
+            XAsync<Bitmap> request = new XAsync<Bitmap>() {
+                @Override
+                protected Bitmap task() {
+                    return decodeTile(key.sampleSize, key.x, key.y);
+                }
+
+                @Override
+                protected void callback(Bitmap result) {
+                    mPending.remove(key);
+                    if (result != null && !mRecycled) {
+                        callback.onTile(new Tile(key.sampleSize, key.x, key.y,
+                                tileRect(key.sampleSize, key.x, key.y), result));
+                    }
+                }
+
+                @Override
+                protected void expired() {
+                    mPending.remove(key);
+                }
+            };
+            request.setTag(this);
+            request.setDeadline(TILE_DEADLINE_MILLIS, TimeUnit.MILLISECONDS);
+            mPending.put(key, request);
+            ThreadPoolManager.getInstance().execute(request);
+        }
+    }
+
+    private static float distance(TileKey key, float cx, float cy) {
+        float dx = key.x - cx;
+        float dy = key.y - cy;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * 取消未完成的块并释放解码器，已解出的块留在共享缓存里；主线程调用
+     */
+    public void recycle() {
+        mRecycled = true;
+        ThreadPoolManager.getInstance().cancelAll(this);
+        mPending.clear();
+        mDecoder.recycle();
+    }
+}
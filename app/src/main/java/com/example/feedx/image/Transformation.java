@@ -0,0 +1,14 @@
+package com.example.feedx.image;
+
+import android.graphics.Bitmap;
+
+/**
+ * 图片变换，在线程池里执行，结果按 {@link #key()} 缓存，
+ * key 需包含所有会影响结果的参数（目标尺寸、圆角半径等）；
+ * 不要 recycle 传进来的 source，它可能还在缓存里
+ */
+public interface Transformation {
+    Bitmap transform(Bitmap source);
+
+    String key();
+}
@@ -0,0 +1,181 @@
+package com.example.feedx.image;
+
+import com.example.feedx.pool.Scratch;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 磁盘写入的后写队列：一个专用线程按批顺序写，不占线程池；
+ * 同一 key 还没写时再次 offer 只保留最新的值；
+ * 队列满了丢最老的一条，不阻塞调用方（缓存写丢了只是下次再下载）
+ */
+class WriteBehindQueue<V> {
+
+    /**
+     * 写入目标，都在写线程调用
+     */
+    interface Sink<V> {
+        void write(String key, V value);
+
+        /**
+         * 一批写完后调用一次，用来 flush
+         */
+        void endBatch();
+    }
+
+    /**
+     * 空闲这么久写线程就退出，下次 offer 再启动
+     */
+    private static final long IDLE_MILLIS = 30 * 1000;
+
+    private final String mName;
+    private final int mCapacity;
+    private final int mBatchSize;
+    private final Sink<V> mSink;
+    /**
+     * 按插入顺序，覆盖同一 key 不改变位置
+     */
+    private final LinkedHashMap<String, V> mPending = new LinkedHashMap<>();
+    /**
+     * 已取出正在写的，写完前读也要能看到
+     */
+    private final HashMap<String, V> mWriting = new HashMap<>();
+    private Thread mWriter;
+    private long mDropped;
+
+    WriteBehindQueue(String name, int capacity, int batchSize, Sink<V> sink) {
+        mName = name;
+        mCapacity = capacity;
+        mBatchSize = batchSize;
+        mSink = sink;
+    }
+
+    /**
+     * 入队，返回 false 表示因队列满挤掉了一条更早的写
+     */
+    synchronized boolean offer(String key, V value) {
+        boolean shed = false;
+        if (!mPending.containsKey(key) && mPending.size() >= mCapacity) {
+            Iterator<String> it = mPending.keySet().iterator();
+            it.next();
+            it.remove();
+            mDropped++;
+            shed = true;
+        }
+        mPending.put(key, value);
+        if (mWriter == null) {
+            mWriter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // 写线程编码时复用同一份缓冲
+                    Scratch.attach();
+                    try {
+                        drain();
+                    } finally {
+                        writerExited();
+                        Scratch.detach();
+                    }
+                }
+            }, mName);
+            // 比下载和解码低一档
+            mWriter.setPriority(Thread.NORM_PRIORITY - 1);
+            mWriter.start();
+        } else {
+            notifyAll();
+        }
+        return !shed;
+    }
+
+    /**
+     * 还没写到磁盘的值，读的时候优先用
+     */
+    synchronized V peek(String key) {
+        V value = mPending.get(key);
+        return value != null ? value : mWriting.get(key);
+    }
+
+    /**
+     * 把还没写的值替换掉，没有返回 false
+     */
+    synchronized boolean replace(String key, V value) {
+        if (!mPending.containsKey(key) && !mWriting.containsKey(key)) {
+            return false;
+        }
+        // 正在写的那条写完后会再按新值写一次
+        mPending.put(key, value);
+        return true;
+    }
+
+    synchronized int size() {
+        return mPending.size();
+    }
+
+    synchronized long getDroppedCount() {
+        return mDropped;
+    }
+
+    private void drain() {
+        List<Map.Entry<String, V>> batch = new ArrayList<>(mBatchSize);
+        for (;;) {
+            synchronized (this) {
+                long idleDeadline = System.currentTimeMillis() + IDLE_MILLIS;
+                while (mPending.isEmpty()) {
+                    long wait = idleDeadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        mWriter = null;
+                        return;
+                    }
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException e) {
+                        // 只有这个线程自己用，忽略
+                    }
+                }
+                Iterator<Map.Entry<String, V>> it = mPending.entrySet().iterator();
+                while (it.hasNext() && batch.size() < mBatchSize) {
+                    Map.Entry<String, V> entry = it.next();
+                    batch.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+                    mWriting.put(entry.getKey(), entry.getValue());
+                    it.remove();
+                }
+            }
+            try {
+                for (Map.Entry<String, V> entry : batch) {
+                    try {
+                        mSink.write(entry.getKey(), entry.getValue());
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+                try {
+                    mSink.endBatch();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            } finally {
+                synchronized (this) {
+                    for (Map.Entry<String, V> entry : batch) {
+                        mWriting.remove(entry.getKey());
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 写线程因 Error 异常退出时 mWriter 还指着它，清掉后下次 offer 才会重新启动；
+     * 空闲退出时 drain 已经清过，这时可能已是新的写线程，不能动
+     */
+    private synchronized void writerExited() {
+        if (mWriter == Thread.currentThread()) {
+            mWriter = null;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.feedx.pool;
+
+/**
+ * 带截止时间的任务，出队时已过期就不再执行，
+ * 交给 {@link RejectedPolicyHandler}，原因是 {@link XThreadPool#DEADLINE_REJECT}
+ */
+public interface Deadline {
+
+    /**
+     * 截止时间，{@link System#nanoTime()} 时间轴；0 表示不限
+     */
+    long deadlineNanos();
+
+    /**
+     * 过期被丢弃后由拒绝策略调用，在线程池线程上
+     */
+    void onDeadlineMissed();
+}
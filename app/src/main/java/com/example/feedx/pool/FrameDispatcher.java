@@ -0,0 +1,140 @@
+package com.example.feedx.pool;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XAsync 结果回到主线程的统一出口：各线程投递到一个共享队列，
+ * 每帧开始时由 Choreographer 回调一次性处理，超过每帧预算的留到下一帧；
+ * 一批图片同时完成时只占几帧的开头，不会为每个结果单独发消息；
+ * 注册在 {@link ThreadPoolManager} 上，cancelAll 时取消还没投递的同组结果
+ */
+public class FrameDispatcher implements Choreographer.FrameCallback, TaskHolder {
+
+    /**
+     * 每帧最多花在投递上的时间，60fps 一帧 16ms，留足给 measure/layout/draw
+     */
+    private static final long DEFAULT_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    private static volatile FrameDispatcher sInstance;
+
+    public static FrameDispatcher getInstance() {
+        if (sInstance == null) {
+            synchronized (FrameDispatcher.class) {
+                if (sInstance == null) {
+                    sInstance = new FrameDispatcher();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mScheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(FrameDispatcher.this);
+        }
+    };
+    /**
+     * 由 this 保护
+     */
+    private final ArrayDeque<Runnable> mQueue = new ArrayDeque<>();
+    private boolean mScheduled;
+    private volatile long mBudgetNanos = DEFAULT_BUDGET_NANOS;
+
+    public FrameDispatcher() {
+        ThreadPoolManager.getInstance().addHolder(this);
+    }
+
+    public void setFrameBudget(long budget, TimeUnit unit) {
+        mBudgetNanos = unit.toNanos(budget);
+    }
+
+    /**
+     * 任意线程调用，r 在之后某一帧开始时于主线程执行
+     */
+    public void post(Runnable r) {
+        synchronized (this) {
+            mQueue.add(r);
+            if (mScheduled) {
+                return;
+            }
+            mScheduled = true;
+        }
+        scheduleFrame();
+    }
+
+    /**
+     * 从队列摘掉同组的 {@link TaggedTask}，页面销毁后不再回调；已摘掉的不再占帧预算
+     */
+    @Override
+    public int cancelAll(Object tag) {
+        if (tag == null) {
+            return 0;
+        }
+        List<TaggedTask> removed = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Runnable> it = mQueue.iterator(); it.hasNext(); ) {
+                Runnable r = it.next();
+                if (r instanceof TaggedTask && tag.equals(((TaggedTask) r).getTag())) {
+                    removed.add((TaggedTask) r);
+                    it.remove();
+                }
+            }
+        }
+        for (TaggedTask task : removed) {
+            task.cancel();
+        }
+        return removed.size();
+    }
+
+    private void scheduleFrame() {
+        // Choreographer 按线程区分，只能在主线程取
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mScheduleFrame.run();
+        } else {
+            mMainHandler.post(mScheduleFrame);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        long deadline = System.nanoTime() + mBudgetNanos;
+        for (;;) {
+            Runnable r;
+            synchronized (this) {
+                r = mQueue.poll();
+                if (r == null) {
+                    mScheduled = false;
+                    return;
+                }
+            }
+            try {
+                r.run();
+            } catch (RuntimeException e) {
+                // 和 Handler 一样抛出去，但先把剩下的安排好
+                boolean pending;
+                synchronized (this) {
+                    pending = mScheduled = !mQueue.isEmpty();
+                }
+                if (pending) {
+                    Choreographer.getInstance().postFrameCallback(this);
+                }
+                throw e;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                break;
+            }
+        }
+        // 预算用完，剩下的下一帧继续，mScheduled 保持 true
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
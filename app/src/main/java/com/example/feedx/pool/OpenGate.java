@@ -0,0 +1,78 @@
+package com.example.feedx.pool;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 磁盘缓存在单独线程打开，打开前提交的任务先存在这里，打开后由打开线程按顺序交给线程池；
+ * 这样工作线程不会一启动就卡在 awaitOpen 上，线程池也由打开线程建好，主线程不用建；
+ * 打开前一直注册在 {@link ThreadPoolManager} 上，排着的任务能被 cancelAll 取消
+ */
+public final class OpenGate implements TaskHolder {
+
+    /**
+     * 打开后置为 null，由 this 保护
+     */
+    private List<Runnable> mQueued = new ArrayList<>();
+
+    public OpenGate() {
+        ThreadPoolManager.getInstance().addHolder(this);
+    }
+
+    /**
+     * 已打开直接交给线程池，否则排到打开之后
+     */
+    public void execute(Runnable r) {
+        synchronized (this) {
+            if (mQueued != null) {
+                mQueued.add(r);
+                return;
+            }
+        }
+        ThreadPoolManager.getInstance().execute(r);
+    }
+
+    /**
+     * 在打开线程上调用，打开失败也要调，排着的任务照常执行，读写各自按未命中处理
+     */
+    public void open() {
+        ThreadPoolManager pool = ThreadPoolManager.getInstance();
+        pool.prestart();
+        // 持锁交给线程池：cancelAll 要么在这之前从这里摘掉，要么之后在线程池队列里找到
+        synchronized (this) {
+            if (mQueued == null) {
+                return;
+            }
+            for (Runnable r : mQueued) {
+                pool.execute(r);
+            }
+            mQueued = null;
+        }
+        pool.removeHolder(this);
+    }
+
+    @Override
+    public int cancelAll(Object tag) {
+        if (tag == null) {
+            return 0;
+        }
+        List<TaggedTask> removed = new ArrayList<>();
+        synchronized (this) {
+            if (mQueued == null) {
+                return 0;
+            }
+            for (Iterator<Runnable> it = mQueued.iterator(); it.hasNext(); ) {
+                Runnable r = it.next();
+                if (r instanceof TaggedTask && tag.equals(((TaggedTask) r).getTag())) {
+                    removed.add((TaggedTask) r);
+                    it.remove();
+                }
+            }
+        }
+        for (TaggedTask task : removed) {
+            task.cancel();
+        }
+        return removed.size();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.feedx.pool;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * 线程独占的可复用缓冲区：解码的 inTempStorage、读文件的缓冲、编码输出，
+ * 同一线程上的任务依次使用，不需要同步；
+ * {@link XThreadPool} 的每个工作线程自带一个，其他长期存在的线程可以自己 {@link #attach()}；
+ * 拿到的缓冲只能在当前任务里用，不能交给别的线程或留到下一个任务；
+ * 内存紧张时 {@link #trim()}，各线程下次取用时丢掉已保留的缓冲
+ */
+public final class Scratch {
+
+    /**
+     * BitmapFactory 默认的 inTempStorage 大小
+     */
+    public static final int TEMP_STORAGE_SIZE = 16 * 1024;
+    /**
+     * 超过这个大小的缓冲用完不保留，免得一张大图之后一直占着内存
+     */
+    private static final int MAX_RETAINED = 1024 * 1024;
+
+    private static final ThreadLocal<Scratch> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 每次 trim 加一，和自己记下的不同就先释放
+     */
+    private static volatile int sGeneration;
+
+    /**
+     * onTrimMemory 时调用；缓冲属于各自线程，这里只做标记，不跨线程去动
+     */
+    public static synchronized void trim() {
+        sGeneration++;
+    }
+
+    /**
+     * 当前线程的 Scratch，不在工作线程上（也没有 attach）时为 null，调用方自己分配
+     */
+    public static Scratch current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 给当前线程绑定一个，已有则直接返回；线程退出前调 {@link #detach()}
+     */
+    public static Scratch attach() {
+        Scratch scratch = CURRENT.get();
+        if (scratch == null) {
+            scratch = new Scratch();
+            CURRENT.set(scratch);
+        }
+        return scratch;
+    }
+
+    public static void detach() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 工作线程开始时绑定自己的
+     */
+    static void bind(Scratch scratch) {
+        CURRENT.set(scratch);
+    }
+
+    private byte[] tempStorage;
+    private byte[] buffer;
+    private Output output;
+    private int generation = sGeneration;
+
+    Scratch() {
+    }
+
+    private void checkTrim() {
+        int current = sGeneration;
+        if (generation != current) {
+            generation = current;
+            tempStorage = null;
+            buffer = null;
+            output = null;
+        }
+    }
+
+    /**
+     * 给 BitmapFactory.Options#inTempStorage 用
+     */
+    public byte[] tempStorage() {
+        checkTrim();
+        if (tempStorage == null) {
+            tempStorage = new byte[TEMP_STORAGE_SIZE];
+        }
+        return tempStorage;
+    }
+
+    /**
+     * 至少 minSize 的读缓冲，内容不清零
+     */
+    public byte[] buffer(int minSize) {
+        checkTrim();
+        if (buffer == null || buffer.length < minSize) {
+            // 按 2 的幂增长，大小相近的图不会反复重新分配
+            int size = Math.max(Integer.highestOneBit(Math.max(minSize - 1, 1)) << 1, 8 * 1024);
+            byte[] bytes = new byte[size > 0 ? size : minSize];
+            if (bytes.length <= MAX_RETAINED) {
+                buffer = bytes;
+            }
+            return bytes;
+        }
+        return buffer;
+    }
+
+    /**
+     * 清空后的编码输出流，结果用 {@link Output#array()} 和 size() 直接取，不复制
+     */
+    public Output output() {
+        checkTrim();
+        if (output == null) {
+            output = new Output();
+        }
+        output.reset();
+        return output;
+    }
+
+    /**
+     * 可直接访问内部数组的 ByteArrayOutputStream，超过上限的数组在下次取用 reset 时丢掉
+     */
+    public static final class Output extends ByteArrayOutputStream {
+
+        Output() {
+            super(64 * 1024);
+        }
+
+        public byte[] array() {
+            return buf;
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            if (buf.length > MAX_RETAINED) {
+                buf = new byte[64 * 1024];
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.feedx.pool;
+
+/**
+ * 按 tag 分组的任务，{@link XThreadPool#cancelAll(Object, boolean)} 可以一次取消同组的排队和正在执行的任务
+ */
+public interface TaggedTask {
+
+    /**
+     * 分组标记，一般是页面；null 不属于任何组
+     */
+    Object getTag();
+
+    /**
+     * 被取消时调用，可能在任意线程；排队中的任务不会再执行，正在执行的需要自己检查标记；
+     * 被 {@link ThreadPoolManager} 的线程池拒绝时也会调
+     */
+    void cancel();
+}
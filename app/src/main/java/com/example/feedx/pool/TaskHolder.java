@@ -0,0 +1,13 @@
+package com.example.feedx.pool;
+
+/**
+ * 线程池之外暂存任务的地方，如等磁盘缓存打开的任务；
+ * 注册到 {@link ThreadPoolManager} 后，{@link ThreadPoolManager#cancelAll(Object)} 也会取消这里的同组任务
+ */
+public interface TaskHolder {
+
+    /**
+     * 移除 tag 组的 {@link TaggedTask} 并调用其 cancel()，返回移除的个数
+     */
+    int cancelAll(Object tag);
+}
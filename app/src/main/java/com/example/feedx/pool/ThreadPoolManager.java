@@ -1,12 +1,19 @@
 package com.example.feedx.pool;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class ThreadPoolManager {
 
-    private static ThreadPoolManager mInstance;
+    /**
+     * 当前设备可用处理器核心数*2 + 1 ，能让cpu 效率得到最大程度执行（有研究论证）
+     */
+    public static final int CORE_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2 + 1;
+
+    private static volatile ThreadPoolManager mInstance;
 
     public static ThreadPoolManager getInstance(){
         if (mInstance == null){
@@ -19,26 +26,99 @@ public class ThreadPoolManager {
         return mInstance;
     }
 
-    private XThreadPool threadPool;
+    /**
+     * 第一次 execute 时才创建
+     */
+    private volatile XThreadPool threadPool;
+    /**
+     * 线程池之外还暂存着任务的地方，由 holders 自身保护
+     */
+    private final List<TaskHolder> holders = new ArrayList<>();
 
     public ThreadPoolManager() {
-        // 当前设备可用处理器核心数*2 + 1 ，能让cpu 效率得到最大程度执行（有研究论证）
-        int corePoolSize = Runtime.getRuntime().availableProcessors() * 2 + 1;
-        int maxPoolSize = corePoolSize;
-        long keepAliveTime = 0L;
-        TimeUnit unit = TimeUnit.SECONDS;
-        threadPool = new XThreadPool(corePoolSize,
-                maxPoolSize,
-                keepAliveTime,
-                unit,
-                new XBlockList<Runnable>(),
-                new DefaultThreadFactory(),
-                new RejectedHandler());
+    }
+
+    private XThreadPool pool() {
+        XThreadPool pool = threadPool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = threadPool;
+                if (pool == null) {
+                    int corePoolSize = CORE_POOL_SIZE;
+                    int maxPoolSize = corePoolSize;
+                    long keepAliveTime = 0L;
+                    TimeUnit unit = TimeUnit.SECONDS;
+                    pool = new XThreadPool(corePoolSize,
+                            maxPoolSize,
+                            keepAliveTime,
+                            unit,
+                            new XBlockList<Runnable>(),
+                            new DefaultThreadFactory(),
+                            new RejectedHandler());
+                    threadPool = pool;
+                }
+            }
+        }
+        return pool;
     }
 
     public void execute(Runnable r){
         if (r != null) {
-            threadPool.execute(r);
+            pool().execute(r);
+        }
+    }
+
+    /**
+     * 在调用线程上先把线程池建好，磁盘缓存的打开线程会调，主线程第一次 execute 时就不用建了
+     */
+    public void prestart() {
+        pool();
+    }
+
+    public void addHolder(TaskHolder holder) {
+        synchronized (holders) {
+            holders.add(holder);
+        }
+    }
+
+    public void removeHolder(TaskHolder holder) {
+        synchronized (holders) {
+            holders.remove(holder);
+        }
+    }
+
+    /**
+     * 取消 tag 组的排队任务并中断正在执行的，页面销毁时调用；
+     * 先取消还在 {@link TaskHolder} 里的，它们随后才会进线程池
+     */
+    public int cancelAll(Object tag) {
+        List<TaskHolder> snapshot;
+        synchronized (holders) {
+            snapshot = new ArrayList<>(holders);
+        }
+        int n = 0;
+        for (TaskHolder holder : snapshot) {
+            n += holder.cancelAll(tag);
+        }
+        XThreadPool pool = threadPool;
+        return pool != null ? n + pool.cancelAll(tag, true) : n;
+    }
+
+    /**
+     * 内存紧张时减少常驻线程，多出的空闲线程会退出并释放线程栈；
+     * 线程池还没创建时忽略
+     */
+    public void setCorePoolSize(int corePoolSize) {
+        XThreadPool pool = threadPool;
+        if (pool != null) {
+            pool.setCorePoolSize(Math.max(1, Math.min(corePoolSize, CORE_POOL_SIZE)));
+        }
+    }
+
+    public void restoreCorePoolSize() {
+        XThreadPool pool = threadPool;
+        if (pool != null) {
+            pool.setCorePoolSize(CORE_POOL_SIZE);
         }
     }
 
@@ -81,8 +161,23 @@ public class ThreadPoolManager {
         public void rejectedPolicy(Runnable r, int reason) {
             if (reason == XThreadPool.NOR_REJECT) {
                 System.out.println("log rejectedPolicy");
+                cancelRejected(r);
             } else if (reason == XThreadPool.SHUTDOWN_REJECT) {
                 System.out.println("rejected reason shutdown");
+                cancelRejected(r);
+            } else if (reason == XThreadPool.DEADLINE_REJECT) {
+                if (r instanceof Deadline) {
+                    ((Deadline) r).onDeadlineMissed();
+                }
+            }
+        }
+
+        /**
+         * 不会再执行了，按取消处理，任务好归还自己占着的名额等
+         */
+        private void cancelRejected(Runnable r) {
+            if (r instanceof TaggedTask) {
+                ((TaggedTask) r).cancel();
             }
         }
     }
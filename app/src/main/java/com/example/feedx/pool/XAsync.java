@@ -1,60 +1,145 @@
 package com.example.feedx.pool;
 
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public abstract class XAsync<T> implements Runnable {
+/**
+ * 线程池里执行 task()，结果和进度经 {@link FrameDispatcher} 在帧开始时回到主线程；
+ * 进度按任务合并，一帧内多次 postProgress 只回调最后一次；
+ * 投递带着任务的 tag，task() 已结束、结果还在等下一帧时 cancelAll 也能取消
+ */
+public abstract class XAsync<T> implements Runnable, Deadline, TaggedTask {
 
-    private static final int MSG_POST_RESULT = 1;
-    private static final int MSG_POST_PROGRESS = 2;
-    private H mH;
+    private volatile long mDeadline;
+    private volatile Object mTag;
+    private volatile boolean mCancelled;
 
-    public XAsync() {
-        mH = new H();
-    }
+    private volatile int mProgress;
+    /**
+     * 已有一个进度投递在排队，新进度只更新 mProgress
+     */
+    private final AtomicBoolean mProgressPosted = new AtomicBoolean();
+    private final Runnable mDeliverProgress = new Delivery() {
+        @Override
+        public void run() {
+            mProgressPosted.set(false);
+            if (!mCancelled) {
+                progress(mProgress);
+            }
+        }
+    };
 
     @Override
     public void run() {
+        if (mCancelled) {
+            return;
+        }
         T result = null;
         try {
             result = task();
         } finally {
-            postResult(result);
+            if (!mCancelled) {
+                postResult(result);
+            }
         }
     }
 
-    protected final void postProgress(int progress) {
-        mH.obtainMessage(MSG_POST_PROGRESS, progress).sendToTarget();
+    /**
+     * 从现在起 timeout 内没开始执行就丢弃，丢弃时回调 {@link #expired()}
+     */
+    public XAsync<T> setDeadline(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        mDeadline = deadline != 0 ? deadline : 1;
+        return this;
     }
 
-    private void postResult(T result) {
-        mH.obtainMessage(MSG_POST_RESULT, result).sendToTarget();
+    @Override
+    public long deadlineNanos() {
+        return mDeadline;
     }
 
-    protected abstract T task();
+    public XAsync<T> setTag(Object tag) {
+        mTag = tag;
+        return this;
+    }
 
-    protected void progress(int progress) {
+    @Override
+    public Object getTag() {
+        return mTag;
     }
 
-    protected void callback (T result) {
+    /**
+     * 取消后不再执行 task()，也不再回调 callback()/progress()，
+     * 正在执行的 task() 可以用 {@link #isCancelled()} 提前结束
+     */
+    @Override
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * 线程池因过期丢弃时调用，{@link #expired()} 回到主线程
+     */
+    @Override
+    public void onDeadlineMissed() {
+        FrameDispatcher.getInstance().post(new Delivery() {
+            @Override
+            public void run() {
+                if (!mCancelled) {
+                    expired();
+                }
+            }
+        });
     }
 
-    private class H extends Handler {
-        public H() {
-            super(Looper.getMainLooper());
+    protected final void postProgress(int progress) {
+        mProgress = progress;
+        if (mProgressPosted.compareAndSet(false, true)) {
+            FrameDispatcher.getInstance().post(mDeliverProgress);
         }
+    }
 
-        @Override
-        public void handleMessage(Message msg) {
-            switch (msg.what) {
-                case MSG_POST_RESULT:
-                    callback((T) msg.obj);
-                    break;
-                case MSG_POST_PROGRESS:
-                    progress((Integer) msg.obj);
-                    break;
+    private void postResult(final T result) {
+        FrameDispatcher.getInstance().post(new Delivery() {
+            @Override
+            public void run() {
+                if (!mCancelled) {
+                    callback(result);
+                }
             }
+        });
+    }
+
+    /**
+     * 投到主线程的回调，和任务同组，取消时连任务一起取消
+     */
+    private abstract class Delivery implements Runnable, TaggedTask {
+        @Override
+        public Object getTag() {
+            return mTag;
         }
+
+        @Override
+        public void cancel() {
+            XAsync.this.cancel();
+        }
+    }
+
+    protected abstract T task();
+
+    protected void progress(int progress) {
+    }
+
+    protected void callback (T result) {
+    }
+
+    /**
+     * 过期未执行，主线程回调，task() 和 callback() 都不会再调用
+     */
+    protected void expired() {
     }
 }
@@ -8,6 +8,13 @@ import java.util.concurrent.locks.ReentrantLock;
 
 public class XBlockList<E> {
 
+    /**
+     * {@link #removeIf(Filter, List)} 的匹配条件
+     */
+    public interface Filter<E> {
+        boolean accept(E e);
+    }
+
     class Node<E> {
         E value;
         Node<E> next;
@@ -62,8 +69,6 @@ public class XBlockList<E> {
                 // 当前元素的总个数还没到达容量，那么就尝试唤醒生产者线程，这样生产更快
                 notFull.signal();
             }
-        } catch (InterruptedException ex) {
-            ex.printStackTrace();
         } finally {
             //完成对锁的释放
             putLock.unlock();
@@ -221,6 +226,69 @@ public class XBlockList<E> {
         }
     }
 
+    /**
+     * 移除一个元素（equals 比较），找到返回 true
+     */
+    public boolean remove(Object o) {
+        if (o == null)
+            return false;
+        fullyLock();
+        try {
+            for (Node<E> trail = head, p = trail.next; p != null; trail = p, p = p.next) {
+                if (o.equals(p.value)) {
+                    unlink(p, trail);
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    /**
+     * 一次遍历移除所有匹配的元素，放到 removed（可为 null），返回移除个数
+     */
+    public int removeIf(Filter<? super E> filter, List<E> removed) {
+        if (filter == null)
+            throw new NullPointerException();
+        int n = 0;
+        fullyLock();
+        try {
+            Node<E> trail = head;
+            Node<E> p = trail.next;
+            while (p != null) {
+                Node<E> next = p.next;
+                E x = p.value;
+                if (filter.accept(x)) {
+                    unlink(p, trail);
+                    if (removed != null)
+                        removed.add(x);
+                    n++;
+                } else {
+                    trail = p;
+                }
+                p = next;
+            }
+        } finally {
+            fullyUnlock();
+        }
+        return n;
+    }
+
+    /**
+     * 摘掉 p，trail 是它的前一个节点，需持有两把锁；
+     * p.next 保留，不影响正在遍历的人
+     */
+    private void unlink(Node<E> p, Node<E> trail) {
+        p.value = null;
+        trail.next = p.next;
+        if (last == p)
+            last = trail;
+        if (count.getAndDecrement() == capacity)
+            notFull.signal();
+    }
+
     void fullyLock() {
         putLock.lock();
         takeLock.lock();
@@ -44,6 +44,10 @@ public class XThreadPool {
      * 线程池关闭了拒绝
      */
     public static final int SHUTDOWN_REJECT = 2;
+    /**
+     * 任务在队列里等过了截止时间，没有执行
+     */
+    public static final int DEADLINE_REJECT = 3;
 
     public XThreadPool(int corePoolSize,
                        int maximumPoolSize,
@@ -88,7 +92,10 @@ public class XThreadPool {
 
         // 2. 看看能否存入队列
         if (workQueue.offer(command)) {
-            if (workerCount.get() == 0) {
+            // 入队的同时被关闭：能摘回来就拒绝，摘不回来说明已经有线程拿走了
+            if (isShutdown() && workQueue.remove(command)) {
+                reject(command, SHUTDOWN_REJECT);
+            } else if (workerCount.get() == 0) {
                 // 发现没有则创建一个工作线程，这种情况极少
                 addWorker(null);
             }
@@ -120,8 +127,10 @@ public class XThreadPool {
                 final ReentrantLock mainLock = this.mainLock;
                 mainLock.lock();
                 try {
-                    if (isShutdown()) {
-                        reject(firstTask, SHUTDOWN_REJECT);
+                    // 关闭后队列里还有任务时仍允许补一个空线程把它们跑完
+                    if (isShutdown() && (firstTask != null || workQueue.isEmpty())) {
+                        if (firstTask != null)
+                            reject(firstTask, SHUTDOWN_REJECT);
                         return false;
                     }
                     workers.add(w);
@@ -156,6 +165,41 @@ public class XThreadPool {
         }
     }
 
+    /**
+     * 调小时中断空闲线程，多出的线程取不到任务后退出；
+     * 调大时若队列有积压，立即补线程
+     */
+    public void setCorePoolSize(int corePoolSize) {
+        if (corePoolSize < 0 || corePoolSize > maximumPoolSize) {
+            throw new IllegalArgumentException();
+        }
+        int delta = corePoolSize - this.corePoolSize;
+        this.corePoolSize = corePoolSize;
+        if (workerCount.get() > corePoolSize) {
+            final ReentrantLock mainLock = this.mainLock;
+            mainLock.lock();
+            try {
+                interruptIdleWorkers();
+            } finally {
+                mainLock.unlock();
+            }
+        } else if (delta > 0) {
+            int k = Math.min(delta, workQueue.size());
+            while (k-- > 0 && workerCount.get() < corePoolSize) {
+                if (!addWorker(null))
+                    break;
+            }
+        }
+    }
+
+    public int getCorePoolSize() {
+        return corePoolSize;
+    }
+
+    public int getPoolSize() {
+        return workerCount.get();
+    }
+
     public boolean isShutdown() {
         return isShutdownState.get();
     }
@@ -187,6 +231,44 @@ public class XThreadPool {
         return taskList;
     }
 
+    /**
+     * 取消 tag 组的所有任务：排队的直接从队列摘掉，正在执行的调用 {@link TaggedTask#cancel()}，
+     * mayInterruptIfRunning 时再中断其线程；返回从队列移除的个数
+     */
+    public int cancelAll(final Object tag, boolean mayInterruptIfRunning) {
+        if (tag == null) {
+            return 0;
+        }
+        List<Runnable> removed = new ArrayList<>();
+        int n = workQueue.removeIf(new XBlockList.Filter<Runnable>() {
+            @Override
+            public boolean accept(Runnable r) {
+                return r instanceof TaggedTask && tag.equals(((TaggedTask) r).getTag());
+            }
+        }, removed);
+        for (Runnable r : removed) {
+            ((TaggedTask) r).cancel();
+        }
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            for (Worker w : workers) {
+                synchronized (w) {
+                    Runnable r = w.current;
+                    if (r instanceof TaggedTask && tag.equals(((TaggedTask) r).getTag())) {
+                        ((TaggedTask) r).cancel();
+                        if (mayInterruptIfRunning) {
+                            w.thread.interrupt();
+                        }
+                    }
+                }
+            }
+        } finally {
+            mainLock.unlock();
+        }
+        return n;
+    }
+
     private void toShutdownState() {
         isShutdownState.set(true);
     }
@@ -231,6 +313,15 @@ public class XThreadPool {
          * worker 内部锁，目前主要用于shutdown 功能
          */
         private final ReentrantLock rl = new ReentrantLock();
+        /**
+         * 线程独占的缓冲区，runWorker 里绑定到线程，任务通过 {@link Scratch#current()} 取
+         */
+        final Scratch scratch = new Scratch();
+        /**
+         * 正在执行的任务，读写都在 synchronized (worker) 里，
+         * 保证 cancelAll 的中断不会落到下一个任务上
+         */
+        private Runnable current;
 
         Worker(Runnable firstTask) {
             this.firstTask = firstTask;
@@ -250,57 +341,106 @@ public class XThreadPool {
     final void runWorker(Worker w) {
         Runnable task = w.firstTask;
         w.firstTask = null; // help GC
+        Scratch.bind(w.scratch);
+        // 任务抛异常退出时 getTask 没有减过计数
+        boolean completedAbruptly = true;
         try {
             while (task != null || (task = getTask()) != null) {
+                if (isExpired(task)) {
+                    // 结果已经没人要了，不占线程
+                    reject(task, DEADLINE_REJECT);
+                    task = null;
+                    continue;
+                }
                 w.rl.lock();
+                synchronized (w) {
+                    w.current = task;
+                    // 调整核心数、取消上一个任务时的中断不要带进这个任务里
+                    if (!isShutdown())
+                        Thread.interrupted();
+                }
                 try {
                     task.run();
                 } finally {
+                    synchronized (w) {
+                        w.current = null;
+                    }
                     task = null;
                     w.completedTasks++;
                     w.rl.unlock();
                 }
             }
+            completedAbruptly = false;
         } finally {
-            processWorkerExit(w);
+            Scratch.detach();
+            processWorkerExit(w, completedAbruptly);
         }
     }
 
     /**
-     * 先移除，在看是否是没达到核心线程数，没达到则再创建一个
+     * 先移除；异常退出的一定补一个，正常退出的只在线程数低于核心数
+     * （核心数为 0 时队列里还有任务则按 1 算）时补
      */
-    private void processWorkerExit(Worker w) {
+    private void processWorkerExit(Worker w, boolean completedAbruptly) {
+        if (completedAbruptly)
+            workerCount.getAndDecrement();
         final ReentrantLock mainLock = this.mainLock;
         mainLock.lock();
         try {
             workers.remove(w);
-            if (!isShutdown() && workerCount.get() - 1 < corePoolSize) {
-                addWorker(null);
-            } else {
-                workerCount.getAndDecrement();
-            }
         } finally {
             mainLock.unlock();
         }
+        if (!completedAbruptly) {
+            int min = corePoolSize;
+            if (min == 0 && !workQueue.isEmpty())
+                min = 1;
+            if (workerCount.get() >= min)
+                return;
+        }
+        addWorker(null);
     }
 
+    /**
+     * 返回 null 表示该线程应退出：已关闭且队列为空，或超过核心数且空闲超时；
+     * 返回 null 前已经把线程数减一，多个线程同时超时时只有多出核心数的那几个能减成功；
+     * 被中断后重新判断，核心数调小时多出的空闲线程由此退出
+     */
     private Runnable getTask() {
-        if (isShutdown() && workQueue.isEmpty())
-            return null;
-        try {
-            Runnable task = null;
-            if (workerCount.get() > corePoolSize) {
-                task = workQueue.poll(keepAliveTime, TimeUnit.NANOSECONDS);
-            } else {
-                task = workQueue.take();
+        boolean timedOut = false;
+        for (;;) {
+            if (isShutdown() && workQueue.isEmpty()) {
+                workerCount.getAndDecrement();
+                return null;
+            }
+            int wc = workerCount.get();
+            boolean timed = wc > corePoolSize;
+            // 队列里还有任务时留最后一个线程
+            if (timed && timedOut && (wc > 1 || workQueue.isEmpty())) {
+                if (workerCount.compareAndSet(wc, wc - 1))
+                    return null;
+                continue;
             }
-            if (task != null) {
-                return task;
+            try {
+                Runnable task = timed ?
+                        workQueue.poll(keepAliveTime, TimeUnit.NANOSECONDS) :
+                        workQueue.take();
+                if (task != null) {
+                    return task;
+                }
+                timedOut = true;
+            } catch (InterruptedException e) {
+                timedOut = false;
             }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
         }
-        return null;
+    }
+
+    private static boolean isExpired(Runnable task) {
+        if (!(task instanceof Deadline)) {
+            return false;
+        }
+        long deadline = ((Deadline) task).deadlineNanos();
+        return deadline != 0 && System.nanoTime() - deadline > 0;
     }
 
     public ThreadFactory getThreadFactory() {
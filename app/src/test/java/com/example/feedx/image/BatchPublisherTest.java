@@ -0,0 +1,254 @@
+package com.example.feedx.image;
+
+import android.graphics.Bitmap;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class BatchPublisherTest {
+
+    private static final int COUNT = 200;
+    private static final int MAX_IN_FLIGHT = 8;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private MockWebServer server;
+    /**
+     * 服务端同时在处理的请求数和峰值
+     */
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private List<String> urls;
+    private MemoryCache memory;
+    private ImageLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        final byte[] png = png(32);
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (!request.getPath().endsWith(".png")) {
+                    return new MockResponse().setResponseCode(404);
+                }
+                int now = active.incrementAndGet();
+                try {
+                    int max;
+                    while (now > (max = peak.get()) && !peak.compareAndSet(max, now)) {
+                        // 重试
+                    }
+                    Thread.sleep(5);
+                    return new MockResponse()
+                            .setHeader("Content-Type", "image/png")
+                            .setBody(new Buffer().write(png));
+                } finally {
+                    active.decrementAndGet();
+                }
+            }
+        });
+        server.start();
+        urls = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            urls.add(server.url("/img/" + i + ".png").toString());
+        }
+        memory = new MemoryCache();
+        loader = new ImageLoader(ApplicationProvider.getApplicationContext());
+        loader.setImageCache(new ImageLoader.DoubleCache(memory,
+                new SegmentDiskCache<>(tmp.newFolder(), BitmapCodec.INSTANCE)));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * 收集发出的 item，onSubscribe 时请求 initial 个
+     */
+    private static class Collector implements ImageFlow.Subscriber<BatchPublisher.Item> {
+        final long initial;
+        final List<BatchPublisher.Item> items = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile ImageFlow.Subscription subscription;
+        volatile Throwable error;
+
+        Collector(long initial) {
+            this.initial = initial;
+        }
+
+        @Override
+        public void onSubscribe(ImageFlow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initial);
+        }
+
+        @Override
+        public void onNext(BatchPublisher.Item item) {
+            synchronized (items) {
+                items.add(item);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        int size() {
+            synchronized (items) {
+                return items.size();
+            }
+        }
+    }
+
+    @Test
+    public void ordered_emitsInInputOrder() throws Exception {
+        Collector collector = new Collector(Long.MAX_VALUE);
+        loader.loadAll(urls, MAX_IN_FLIGHT, true).subscribe(collector);
+
+        assertTrue(collector.done.await(30, TimeUnit.SECONDS));
+        assertNull(collector.error);
+        assertEquals(COUNT, collector.items.size());
+        for (int i = 0; i < COUNT; i++) {
+            BatchPublisher.Item item = collector.items.get(i);
+            assertEquals(i, item.index);
+            assertEquals(urls.get(i), item.url);
+            assertNotNull(item.bitmap);
+        }
+        assertTrue("peak " + peak.get(), peak.get() <= MAX_IN_FLIGHT);
+    }
+
+    @Test
+    public void unordered_followsDemand() throws Exception {
+        Collector collector = new Collector(10);
+        loader.loadAll(urls, MAX_IN_FLIGHT, false).subscribe(collector);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (collector.size() < 10) {
+            assertTrue("timed out", System.nanoTime() - deadline < 0);
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        // 需求用完就不再取 url
+        assertEquals(10, collector.size());
+        assertEquals(10, server.getRequestCount());
+
+        collector.subscription.request(COUNT - 10);
+        assertTrue(collector.done.await(30, TimeUnit.SECONDS));
+        assertNull(collector.error);
+        Set<Integer> indexes = new HashSet<>();
+        for (BatchPublisher.Item item : collector.items) {
+            assertNotNull(item.bitmap);
+            assertTrue(indexes.add(item.index));
+        }
+        assertEquals(COUNT, indexes.size());
+        assertTrue("peak " + peak.get(), peak.get() <= MAX_IN_FLIGHT);
+    }
+
+    @Test
+    public void batch_doesNotFillMemoryCache() throws Exception {
+        Collector collector = new Collector(Long.MAX_VALUE);
+        loader.loadAll(urls, MAX_IN_FLIGHT, false).subscribe(collector);
+        assertTrue(collector.done.await(30, TimeUnit.SECONDS));
+
+        for (String url : urls) {
+            assertNull(memory.get(url));
+        }
+        // 原始字节进了磁盘，再跑一遍不走网络
+        int requests = server.getRequestCount();
+        collector = new Collector(Long.MAX_VALUE);
+        loader.loadAll(urls, MAX_IN_FLIGHT, true).subscribe(collector);
+        assertTrue(collector.done.await(30, TimeUnit.SECONDS));
+        assertEquals(COUNT, collector.items.size());
+        assertEquals(requests, server.getRequestCount());
+    }
+
+    @Test
+    public void failedItem_doesNotEndStream() throws Exception {
+        List<String> batch = new ArrayList<>(urls.subList(0, 5));
+        batch.add(2, server.url("/img/missing").toString());
+        Collector collector = new Collector(Long.MAX_VALUE);
+        loader.loadAll(batch, 2, true).subscribe(collector);
+
+        assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+        assertNull(collector.error);
+        assertEquals(6, collector.items.size());
+        BatchPublisher.Item failed = collector.items.get(2);
+        assertNull(failed.bitmap);
+        assertNotNull(failed.error);
+        assertNotNull(collector.items.get(5).bitmap);
+    }
+
+    @Test
+    public void errorInWorker_stillCompletes() throws Exception {
+        loader.setImageCache(new ImageLoader.DoubleCache(new MemoryCache() {
+            @Override
+            public Bitmap get(String url) {
+                if (url.endsWith("oom.png")) {
+                    throw new OutOfMemoryError("expected");
+                }
+                return super.get(url);
+            }
+        }, new SegmentDiskCache<>(tmp.newFolder(), BitmapCodec.INSTANCE)));
+        List<String> batch = new ArrayList<>(urls.subList(0, 3));
+        batch.add(1, server.url("/img/oom.png").toString());
+        Collector collector = new Collector(Long.MAX_VALUE);
+        loader.loadAll(batch, 2, true).subscribe(collector);
+
+        assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+        assertNull(collector.error);
+        assertEquals(4, collector.items.size());
+        assertTrue(collector.items.get(1).error instanceof OutOfMemoryError);
+        assertNotNull(collector.items.get(3).bitmap);
+    }
+
+    private static byte[] png(int size) throws Exception {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, x * y);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
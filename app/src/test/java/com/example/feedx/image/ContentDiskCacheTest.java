@@ -0,0 +1,123 @@
+package com.example.feedx.image;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ContentDiskCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] content(int fill) {
+        byte[] data = new byte[100];
+        Arrays.fill(data, (byte) fill);
+        return data;
+    }
+
+    private File blob(byte[] data) {
+        return new File(tmp.getRoot(), ImgUtil.hashKeyForContent(data) + ".0");
+    }
+
+    private int blobCount() {
+        int count = 0;
+        for (String name : tmp.getRoot().list()) {
+            if (name.endsWith(".0")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void putBytes_sameContentStoredOnce() {
+        ContentDiskCache cache = new ContentDiskCache(tmp.getRoot(), 1, 1024);
+        cache.putBytes("https://a.example.com/1.jpg", content(1));
+        cache.putBytes("https://b.example.com/1.jpg?w=100", content(1));
+
+        assertTrue(cache.contains("https://a.example.com/1.jpg"));
+        assertTrue(cache.contains("https://b.example.com/1.jpg?w=100"));
+        assertEquals(1, blobCount());
+
+        cache.remove("https://a.example.com/1.jpg");
+        assertTrue(blob(content(1)).exists());
+        cache.remove("https://b.example.com/1.jpg?w=100");
+        assertFalse(blob(content(1)).exists());
+    }
+
+    @Test
+    public void eviction_keepsBlobWhileReferenced() {
+        ContentDiskCache cache = new ContentDiskCache(tmp.getRoot(), 1, 250);
+        cache.putBytes("a", content(1));
+        cache.putBytes("c", content(2));
+        // b 最近引用了 a 的内容，这份 blob 最老但不能先删
+        cache.putBytes("b", content(1));
+        cache.putBytes("d", content(3));
+
+        assertFalse(cache.contains("a"));
+        assertFalse(cache.contains("c"));
+        assertTrue(cache.contains("b"));
+        assertTrue(cache.contains("d"));
+        assertTrue(blob(content(1)).exists());
+        assertFalse(blob(content(2)).exists());
+        assertTrue(blob(content(3)).exists());
+    }
+
+    @Test
+    public void reopen_restoresIndex() {
+        ContentDiskCache cache = new ContentDiskCache(tmp.getRoot(), 1, 1024);
+        cache.putBytes("a", content(1));
+        cache.putBytes("b", content(1));
+        cache.putBytes("c", content(2));
+        cache.remove("c");
+
+        // 不调 flush，索引也已经落盘
+        ContentDiskCache reopened = new ContentDiskCache(tmp.getRoot(), 1, 1024);
+        assertTrue(reopened.contains("a"));
+        assertTrue(reopened.contains("b"));
+        assertFalse(reopened.contains("c"));
+        assertEquals(1, blobCount());
+    }
+
+    @Test
+    public void indexJournal_compactedWithinSession() throws Exception {
+        ContentDiskCache cache = new ContentDiskCache(tmp.getRoot(), 1, 1024);
+        for (int i = 0; i < 3000; i++) {
+            // 同一个 url 反复换内容，每次都追加一条记录
+            cache.putBytes("a", content(i % 2 + 1));
+        }
+        cache.putBytes("b", content(3));
+
+        assertTrue(indexLines() < 2100);
+        ContentDiskCache reopened = new ContentDiskCache(tmp.getRoot(), 1, 1024);
+        assertTrue(reopened.contains("a"));
+        assertTrue(reopened.contains("b"));
+        assertEquals(2, blobCount());
+    }
+
+    private int indexLines() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(new File(tmp.getRoot(), "index.journal")));
+        try {
+            int lines = 0;
+            while (reader.readLine() != null) {
+                lines++;
+            }
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+}
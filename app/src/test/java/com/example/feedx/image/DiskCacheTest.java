@@ -0,0 +1,33 @@
+package com.example.feedx.image;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DiskCacheTest {
+
+    @Test
+    public void defaultLoaders_shareOneDiskCache() {
+        Context context = ApplicationProvider.getApplicationContext();
+        ImageLoader first = new ImageLoader(context);
+        ImageLoader second = new ImageLoader(context);
+
+        // 两个页面各建一个 ImageLoader，默认目录上只有一个 journal 和写线程
+        assertSame(DiskCache.shared(context), disk(first));
+        assertSame(disk(first), disk(second));
+        assertSame(DiskCache.shared(context), new ImageLoader.DoubleCache(context).mDiskCache);
+    }
+
+    private static ImageCache<?> disk(ImageLoader loader) {
+        return ((ImageLoader.DoubleCache) loader.getImageCache()).mDiskCache;
+    }
+}
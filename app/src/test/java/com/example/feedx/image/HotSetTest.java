@@ -0,0 +1,86 @@
+package com.example.feedx.image;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class HotSetTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void saveLoad_keepsOrder() throws Exception {
+        File file = new File(tmp.getRoot(), "hotset");
+        HotSet hotSet = new HotSet(file);
+        for (int i = 0; i < 3; i++) {
+            hotSet.record("a");
+        }
+        hotSet.record("b");
+        hotSet.record("c");
+        hotSet.record("c");
+        hotSet.save();
+
+        HotSet loaded = new HotSet(file);
+        loaded.load();
+        assertEquals(Arrays.asList("a", "c", "b"), loaded.hottest(3));
+    }
+
+    @Test
+    public void load_onlyOnce() throws Exception {
+        File file = new File(tmp.getRoot(), "hotset");
+        HotSet saved = new HotSet(file);
+        saved.record("a");
+        saved.save();
+
+        HotSet hotSet = new HotSet(file);
+        hotSet.load();
+        saved.record("b");
+        saved.save();
+        // 同一实例再次 load 不重新读文件
+        hotSet.load();
+        assertEquals(Arrays.asList("a"), hotSet.hottest(10));
+    }
+
+    @Test
+    public void concurrentSaves_leaveCompleteFile() throws Exception {
+        final File file = new File(tmp.getRoot(), "hotset");
+        final HotSet hotSet = new HotSet(file);
+        for (int i = 0; i < 100; i++) {
+            hotSet.record("https://cdn.example.com/img/" + i + ".jpg");
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 20; i++) {
+                        hotSet.save();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        HotSet loaded = new HotSet(file);
+        loaded.load();
+        assertEquals(100, loaded.hottest(1000).size());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+}
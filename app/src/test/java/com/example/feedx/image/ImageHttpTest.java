@@ -0,0 +1,239 @@
+package com.example.feedx.image;
+
+import com.example.feedx.pool.ThreadPoolManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class ImageHttpTest {
+
+    private MockWebServer server;
+    private ImageHttp http;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        // 不用共享的 HostHealth，各用例互不影响
+        http = new ImageHttp(null, new HostHealth());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void fetch_storesValidators() throws Exception {
+        server.enqueue(new MockResponse()
+                .setBody("image")
+                .setHeader("ETag", "\"v1\"")
+                .setHeader("Last-Modified", "Mon, 01 Jan 2018 00:00:00 GMT")
+                .setHeader("Cache-Control", "max-age=60"));
+
+        ImageHttp.Result result = http.fetch(server.url("/a.jpg").toString(), null);
+
+        assertArrayEquals("image".getBytes(), result.data);
+        assertEquals("\"v1\"", result.meta.etag);
+        assertEquals("Mon, 01 Jan 2018 00:00:00 GMT", result.meta.lastModified);
+        assertFalse(result.meta.isStale());
+        assertEquals(result.meta.etag, HttpMeta.decode(result.meta.encode()).etag);
+    }
+
+    @Test
+    public void fetch_revalidatesWith304() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(304).setHeader("Cache-Control", "max-age=60"));
+        HttpMeta stale = new HttpMeta("\"v1\"", "Mon, 01 Jan 2018 00:00:00 GMT", 0);
+
+        ImageHttp.Result result = http.fetch(server.url("/a.jpg").toString(), stale);
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("\"v1\"", request.getHeader("If-None-Match"));
+        assertEquals("Mon, 01 Jan 2018 00:00:00 GMT", request.getHeader("If-Modified-Since"));
+        assertTrue(result.isNotModified());
+        // 304 没带 ETag，沿用旧的
+        assertEquals("\"v1\"", result.meta.etag);
+        assertFalse(result.meta.isStale());
+    }
+
+    @Test
+    public void fetch_reusesConnection() throws Exception {
+        server.enqueue(new MockResponse().setBody("a"));
+        server.enqueue(new MockResponse().setBody("b"));
+
+        http.fetch(server.url("/a.jpg").toString(), null);
+        http.fetch(server.url("/b.jpg").toString(), null);
+
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void fetch_prefersWebp() throws Exception {
+        server.enqueue(new MockResponse().setBody("webp").setHeader("Content-Type", "Image/WebP; q=1"));
+
+        ImageHttp.Result result = http.fetch(server.url("/a.jpg").toString(), null);
+
+        assertEquals("image/webp", result.contentType);
+
+        String accept = server.takeRequest().getHeader("Accept");
+        assertNotNull(accept);
+        assertTrue(accept, accept.startsWith("image/webp"));
+    }
+
+    @Test(expected = IOException.class)
+    public void fetch_failsOnError() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        http.fetch(server.url("/missing.jpg").toString(), null);
+    }
+
+    @Test
+    public void fetch_remembersNotFound() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        String url = server.url("/missing.jpg").toString();
+
+        assertEquals(404, fetchStatus(url));
+        assertEquals(404, fetchStatus(url));
+
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void fetch_failsFastWhileHostUnhealthy() throws Exception {
+        final AtomicLong clock = new AtomicLong();
+        http = new ImageHttp(null, new HostHealth(2, 200, 1000, 0, TimeUnit.MILLISECONDS) {
+            @Override
+            long now() {
+                return clock.get();
+            }
+        });
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        String url = server.url("/a.jpg").toString();
+
+        assertEquals(503, fetchStatus(url));
+        assertEquals(503, fetchStatus(url));
+        try {
+            http.fetch(url, null);
+            fail();
+        } catch (ImageHttp.HostUnavailableException expected) {
+        }
+        assertEquals(2, server.getRequestCount());
+
+        // 退避期过后放一个探测，成功就恢复
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(199));
+        try {
+            http.fetch(url, null);
+            fail();
+        } catch (ImageHttp.HostUnavailableException expected) {
+        }
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        server.enqueue(new MockResponse().setBody("a"));
+        server.enqueue(new MockResponse().setBody("b"));
+        assertArrayEquals("a".getBytes(), http.fetch(url, null).data);
+        assertArrayEquals("b".getBytes(), http.fetch(url, null).data);
+    }
+
+    @Test
+    public void defaultInstances_shareHostHealth() {
+        // 一个 ImageLoader 触发的熔断，其他 ImageLoader 也要遵守
+        assertSame(HostHealth.shared(), new ImageHttp().getHostHealth());
+        assertSame(new ImageHttp().getHostHealth(), new ImageHttp(null).getHostHealth());
+    }
+
+    @Test
+    public void fetch_limitsConcurrencyPerHost() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger arrived = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (arrived.incrementAndGet() == 1) {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                return new MockResponse().setBody("a");
+            }
+        });
+        ImageHttp.setMaxRequestsPerHost(1);
+        try {
+            Thread[] threads = new Thread[2];
+            for (int i = 0; i < threads.length; i++) {
+                final String url = server.url("/" + i + ".jpg").toString();
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            http.fetch(url, null);
+                        } catch (IOException e) {
+                            throw new AssertionError(e);
+                        }
+                    }
+                });
+                threads[i].start();
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (arrived.get() == 0) {
+                assertTrue("timed out", System.nanoTime() - deadline < 0);
+                Thread.sleep(5);
+            }
+            // 同步 execute() 不走 Dispatcher 的限制，第二个请求要等第一个读完
+            Thread.sleep(200);
+            assertEquals(1, arrived.get());
+
+            release.countDown();
+            for (Thread thread : threads) {
+                thread.join(5000);
+            }
+            assertEquals(2, arrived.get());
+        } finally {
+            release.countDown();
+            ImageHttp.setMaxRequestsPerHost(ThreadPoolManager.CORE_POOL_SIZE);
+        }
+    }
+
+    private int fetchStatus(String url) throws Exception {
+        try {
+            http.fetch(url, null);
+        } catch (ImageHttp.HttpStatusException e) {
+            return e.code;
+        }
+        fail("expected an error status");
+        return 0;
+    }
+
+    private static byte[] header(int... bytes) {
+        byte[] data = new byte[16];
+        for (int i = 0; i < bytes.length; i++) {
+            data[i] = (byte) bytes[i];
+        }
+        return data;
+    }
+
+    @Test
+    public void contentTypeOf_prefersHeaderThenSniffs() {
+        byte[] png = header(0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n');
+        assertEquals("image/webp", ImageHttp.contentTypeOf("image/webp", png));
+        assertEquals("image/png", ImageHttp.contentTypeOf("application/octet-stream", png));
+        assertEquals("image/png", ImageHttp.contentTypeOf(null, png));
+        assertEquals("image/jpeg", ImageHttp.contentTypeOf(null, header(0xff, 0xd8, 0xff, 0xe0)));
+        assertEquals("image/gif", ImageHttp.contentTypeOf(null, header('G', 'I', 'F', '8', '9', 'a')));
+        assertEquals("image/webp", ImageHttp.contentTypeOf(null,
+                header('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P')));
+        assertNull(ImageHttp.contentTypeOf(null, header(1, 2, 3, 4)));
+        assertNull(ImageHttp.contentTypeOf(null, new byte[4]));
+    }
+}
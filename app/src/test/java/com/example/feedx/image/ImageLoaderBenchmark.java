@@ -0,0 +1,271 @@
+package com.example.feedx.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.feedx.pool.ThreadPoolManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * ImageLoader + DoubleCache + DiskCache + ThreadPoolManager 端到端基准，
+ * 在 JVM 上用 Robolectric 跑，本地 MockWebServer 提供一组 png；
+ * Bitmap 的编解码是 Robolectric 的 shadow，数字反映的是缓存、调度和 io 的开销，不含真实解码。
+ * 规模可用 -Dfeedx.bench.images / -Dfeedx.bench.rounds 调整；
+ * 平时的 test 不跑，需要带 -Pfeedx.bench：
+ * ./gradlew testDebugUnitTest -Pfeedx.bench --tests '*ImageLoaderBenchmark' -i
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ImageLoaderBenchmark {
+
+    private static final int IMAGES = Integer.getInteger("feedx.bench.images", 48);
+    private static final int ROUNDS = Integer.getInteger("feedx.bench.rounds", 3);
+    private static final int[] CONCURRENCY = {1, 4, 16};
+
+    private MockWebServer server;
+    private List<String> urls;
+    private Context context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = ApplicationProvider.getApplicationContext();
+        final List<byte[]> corpus = corpus(IMAGES);
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                int i = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1, path.lastIndexOf('.')));
+                return new MockResponse()
+                        .setHeader("Content-Type", "image/png")
+                        .setHeader("ETag", "\"" + i + "\"")
+                        .setHeader("Cache-Control", "max-age=3600")
+                        .setBody(new Buffer().write(corpus.get(i)));
+            }
+        });
+        server.start();
+        urls = new ArrayList<>();
+        for (int i = 0; i < IMAGES; i++) {
+            urls.add(server.url("/img/" + i + ".png").toString());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void latencyByTier() throws Exception {
+        ImageMetrics metrics = new ImageMetrics();
+        for (int round = 0; round < ROUNDS; round++) {
+            clearDiskCache();
+            DiskCache disk = new DiskCache(context);
+            ImageLoader loader = new ImageLoader(context, disk);
+            loader.setEventListener(metrics);
+
+            Phase cold = sequential("cold", loader);
+            Phase warm = sequential("memory-hit", loader);
+            awaitDiskWrites(disk);
+            // 换一个空的内存缓存，只剩磁盘
+            loader.setImageCache(new ImageLoader.DoubleCache(new MemoryCache(), disk));
+            Phase diskHit = sequential("disk-hit", loader);
+
+            System.out.println("round " + round);
+            cold.print();
+            warm.print();
+            diskHit.print();
+            assertEquals(1.0, warm.hitRate, 0.0);
+            assertEquals(1.0, diskHit.hitRate, 0.0);
+        }
+        System.out.print("stages\n" + metrics);
+    }
+
+    @Test
+    public void throughputByConcurrency() throws Exception {
+        for (int concurrency : CONCURRENCY) {
+            clearDiskCache();
+            DiskCache disk = new DiskCache(context);
+            ImageLoader loader = new ImageLoader(context, disk);
+            int requests = server.getRequestCount();
+            long start = System.nanoTime();
+            int failed = concurrent(loader, concurrency);
+            long elapsed = System.nanoTime() - start;
+            System.out.println(String.format(Locale.US,
+                    "concurrency %2d: %6.1f images/s, %d fetched, %d failed",
+                    concurrency, IMAGES * 1e9 / elapsed, server.getRequestCount() - requests, failed));
+            assertEquals(0, failed);
+            // 下一轮清目录前让这一轮的写入落完
+            awaitDiskWrites(disk);
+        }
+    }
+
+    /**
+     * 在调用线程上顺序加载，记录每次延迟、分配字节和命中率
+     */
+    private Phase sequential(String name, ImageLoader loader) throws Exception {
+        long[] nanos = new long[urls.size()];
+        int requests = server.getRequestCount();
+        long allocated = allocatedBytes();
+        for (int i = 0; i < urls.size(); i++) {
+            long start = System.nanoTime();
+            Bitmap bitmap = loader.load(urls.get(i));
+            nanos[i] = System.nanoTime() - start;
+            assertNotNull(bitmap);
+        }
+        long bytesPerLoad = allocated < 0 ? -1 : (allocatedBytes() - allocated) / urls.size();
+        int fetched = server.getRequestCount() - requests;
+        return new Phase(name, nanos, bytesPerLoad, 1 - (double) fetched / urls.size());
+    }
+
+    /**
+     * 通过 ThreadPoolManager 同时最多跑 concurrency 个加载
+     */
+    private int concurrent(final ImageLoader loader, int concurrency) throws InterruptedException {
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final CountDownLatch done = new CountDownLatch(urls.size());
+        final AtomicInteger failed = new AtomicInteger();
+        for (final String url : urls) {
+            inFlight.acquire();
+            ThreadPoolManager.getInstance().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (loader.load(url) == null) {
+                            failed.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                    } finally {
+                        inFlight.release();
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        return failed.get();
+    }
+
+    /**
+     * DiskCache.put 是异步的，等所有条目落盘
+     */
+    private void awaitDiskWrites(DiskCache disk) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30 * 1000;
+        for (String url : urls) {
+            while (!disk.contains(url)) {
+                assertTrue("disk write timeout", System.currentTimeMillis() < deadline);
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private void clearDiskCache() {
+        delete(DiskCache.getDiskCacheDir(context, "image"));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * 当前线程累计分配的字节数；com.sun.management 不是标准 api，没有时返回 -1
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        try {
+            Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+            if (type.isInstance(bean)) {
+                Method method = type.getMethod("getThreadAllocatedBytes", long.class);
+                return (Long) method.invoke(bean, Thread.currentThread().getId());
+            }
+        } catch (Exception e) {
+            // 按不支持处理
+        }
+        return -1;
+    }
+
+    private static List<byte[]> corpus(int count) throws Exception {
+        Random random = new Random(42);
+        List<byte[]> corpus = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int size = 64 + random.nextInt(192);
+            BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    image.setRGB(x, y, random.nextInt());
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", out);
+            corpus.add(out.toByteArray());
+        }
+        return corpus;
+    }
+
+    private static class Phase {
+        final String name;
+        final long[] nanos;
+        final long bytesPerLoad;
+        final double hitRate;
+
+        Phase(String name, long[] nanos, long bytesPerLoad, double hitRate) {
+            this.name = name;
+            this.nanos = nanos.clone();
+            Arrays.sort(this.nanos);
+            this.bytesPerLoad = bytesPerLoad;
+            this.hitRate = hitRate;
+        }
+
+        double percentileMillis(double p) {
+            int index = (int) Math.ceil(p * nanos.length) - 1;
+            return nanos[Math.max(0, index)] / 1e6;
+        }
+
+        void print() {
+            System.out.println(String.format(Locale.US,
+                    "  %-10s p50 %7.3f ms  p90 %7.3f ms  p99 %7.3f ms  %8s B/load  hit %.2f",
+                    name, percentileMillis(0.5), percentileMillis(0.9), percentileMillis(0.99),
+                    bytesPerLoad < 0 ? "n/a" : String.valueOf(bytesPerLoad), hitRate));
+        }
+    }
+}
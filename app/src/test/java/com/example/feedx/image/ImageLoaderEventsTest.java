@@ -0,0 +1,105 @@
+package com.example.feedx.image;
+
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ImageLoaderEventsTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private MockWebServer server;
+    private MemoryCache memory;
+    private ImageLoader loader;
+    private final AtomicInteger memoryHits = new AtomicInteger();
+    private final AtomicInteger memoryMisses = new AtomicInteger();
+    private final CountDownLatch decoded = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        memory = new MemoryCache();
+        loader = new ImageLoader(ApplicationProvider.getApplicationContext());
+        loader.setImageCache(new ImageLoader.DoubleCache(memory,
+                new SegmentDiskCache<>(tmp.newFolder(), BitmapCodec.INSTANCE)));
+        loader.setEventListener(new ImageEventListener() {
+            @Override
+            public void onStage(String url, int stage, long nanos) {
+                if (stage == STAGE_DECODE) {
+                    decoded.countDown();
+                }
+            }
+
+            @Override
+            public void onCacheResult(String url, int tier, boolean hit) {
+                if (tier == TIER_MEMORY) {
+                    (hit ? memoryHits : memoryMisses).incrementAndGet();
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void displayImage_memoryHitReported() {
+        String url = server.url("/a.png").toString();
+        memory.put(url, Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888));
+
+        loader.displayImage(url, new ImageView(ApplicationProvider.getApplicationContext()));
+
+        assertEquals(1, memoryHits.get());
+        assertEquals(0, memoryMisses.get());
+    }
+
+    @Test
+    public void displayImage_memoryMissReportedOnce() throws Exception {
+        server.enqueue(new MockResponse().setHeader("Content-Type", "image/png").setBody(new Buffer().write(png())));
+        String url = server.url("/a.png").toString();
+
+        loader.displayImage(url, new ImageView(ApplicationProvider.getApplicationContext()));
+
+        // 主线程查过内存，工作线程从磁盘开始，不再查一次
+        assertTrue(decoded.await(5, TimeUnit.SECONDS));
+        assertEquals(0, memoryHits.get());
+        assertEquals(1, memoryMisses.get());
+    }
+
+    private static byte[] png() throws Exception {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
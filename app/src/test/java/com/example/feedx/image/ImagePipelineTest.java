@@ -0,0 +1,152 @@
+package com.example.feedx.image;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+public class ImagePipelineTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private MockWebServer server;
+    private ImageHttp http;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        http = new ImageHttp(null, new HostHealth());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * 转成大写，当作变换
+     */
+    private static final ImagePipeline.Transform<byte[]> UPPER = new ImagePipeline.Transform<byte[]>() {
+        @Override
+        public byte[] apply(byte[] source) {
+            return new String(source).toUpperCase().getBytes();
+        }
+    };
+
+    /**
+     * 只在内存里存，条目带校验信息，和 DiskCache 一样过期时回调 onStale
+     */
+    private static class MetaDiskCache implements DiskImageCache<byte[]> {
+        final ConcurrentHashMap<String, byte[]> data = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, HttpMeta> metas = new ConcurrentHashMap<>();
+        final CountDownLatch metaUpdated = new CountDownLatch(1);
+
+        @Override
+        public byte[] get(String url, OnStaleListener onStale, ImageEventListener events) {
+            HttpMeta meta = metas.get(url);
+            if (meta != null && meta.isStale() && onStale != null) {
+                onStale.onStale(url, meta);
+            }
+            return data.get(url);
+        }
+
+        @Override
+        public byte[] get(String url) {
+            return data.get(url);
+        }
+
+        @Override
+        public void put(String url, byte[] image) {
+            data.put(url, image);
+        }
+
+        @Override
+        public boolean contains(String url) {
+            return data.containsKey(url);
+        }
+
+        @Override
+        public void executeWhenOpen(Runnable r) {
+            r.run();
+        }
+
+        @Override
+        public void put(String url, byte[] image, HttpMeta meta, byte[] bytes, String contentType) {
+            putBytes(url, bytes != null ? bytes : image, meta);
+        }
+
+        @Override
+        public void putBytes(String url, byte[] bytes, HttpMeta meta) {
+            data.put(url, bytes);
+            if (meta != null) {
+                metas.put(url, meta);
+            }
+        }
+
+        @Override
+        public void updateMeta(String url, HttpMeta meta) {
+            metas.put(url, meta);
+            metaUpdated.countDown();
+        }
+
+        @Override
+        public InputStream openStream(String url) {
+            byte[] bytes = data.get(url);
+            return bytes != null ? new ByteArrayInputStream(bytes) : null;
+        }
+    }
+
+    @Test
+    public void load_transformCachedByKey_sourceKeptOnDisk() throws Exception {
+        server.enqueue(new MockResponse().setBody("abc"));
+        SegmentDiskCache<byte[]> disk = new SegmentDiskCache<>(tmp.newFolder(), SegmentDiskCacheTest.BYTES);
+        ImagePipeline<byte[]> pipeline = new ImagePipeline<>(SegmentDiskCacheTest.BYTES,
+                new LruImageCache<>(SegmentDiskCacheTest.BYTES, 1024), disk, http);
+        String url = server.url("/a.jpg").toString();
+
+        assertArrayEquals("ABC".getBytes(), pipeline.load(url, url + "#upper", UPPER, false));
+        assertArrayEquals("ABC".getBytes(), pipeline.load(url, url + "#upper", UPPER, false));
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, pipeline.getMemoryHits());
+
+        // 原图只进磁盘，按网络原始字节存
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!disk.contains(url)) {
+            assertTrue("timed out", System.nanoTime() - deadline < 0);
+            Thread.sleep(10);
+        }
+        assertArrayEquals("abc".getBytes(), disk.getBytes(url));
+        disk.close();
+    }
+
+    @Test
+    public void staleDiskEntry_revalidatedInBackground() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(304).setHeader("Cache-Control", "max-age=60"));
+        MetaDiskCache disk = new MetaDiskCache();
+        String url = server.url("/a.jpg").toString();
+        disk.putBytes(url, "old".getBytes(), new HttpMeta("\"v1\"", null, 0));
+        ImagePipeline<byte[]> pipeline = new ImagePipeline<>(SegmentDiskCacheTest.BYTES,
+                new LruImageCache<>(SegmentDiskCacheTest.BYTES, 1024), disk, http);
+
+        // 本次仍用旧图，304 只刷新校验信息
+        assertArrayEquals("old".getBytes(), pipeline.load(url));
+        assertTrue(disk.metaUpdated.await(5, TimeUnit.SECONDS));
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+        assertFalse(disk.metas.get(url).isStale());
+        assertEquals(0, pipeline.getNetworkLoads());
+    }
+}
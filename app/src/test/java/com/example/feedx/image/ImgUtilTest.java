@@ -0,0 +1,42 @@
+package com.example.feedx.image;
+
+import android.graphics.Bitmap;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ImgUtilTest {
+
+    @After
+    public void tearDown() {
+        ImgUtil.setEncodeFormat("image/jpeg", null, 0);
+    }
+
+    /**
+     * Robolectric 的 compress 不认 WebP，但质量参数照样生效，用输出是否相同判断选了哪一档
+     */
+    @Test
+    public void encodeFormat_perContentType() {
+        Bitmap bitmap = Bitmap.createBitmap(16, 16, Bitmap.Config.RGB_565);
+        byte[] fromPng = ImgUtil.bitmap2Bytes(bitmap, "image/png");
+        byte[] fromJpeg = ImgUtil.bitmap2Bytes(bitmap, "image/jpeg");
+        // png 源默认高质量，其他按默认的有损质量
+        assertFalse(Arrays.equals(fromPng, fromJpeg));
+        assertArrayEquals(fromJpeg, ImgUtil.bitmap2Bytes(bitmap, null));
+
+        ImgUtil.setEncodeFormat("Image/JPEG; q=1", Bitmap.CompressFormat.WEBP, 100);
+        assertArrayEquals(fromPng, ImgUtil.bitmap2Bytes(bitmap, "image/jpeg"));
+
+        ImgUtil.setEncodeFormat("image/jpeg", null, 0);
+        assertArrayEquals(fromJpeg, ImgUtil.bitmap2Bytes(bitmap, "image/jpeg"));
+    }
+}
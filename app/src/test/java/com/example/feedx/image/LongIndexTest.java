@@ -0,0 +1,85 @@
+package com.example.feedx.image;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LongIndexTest {
+
+    @Test
+    public void putGetRemove() {
+        LongIndex index = new LongIndex(4);
+        index.put(42, 7L << 32 | 100, 30);
+
+        assertTrue(index.contains(42));
+        assertEquals(7L << 32 | 100, index.location(42));
+        assertEquals(30, index.length(42));
+
+        index.put(42, 8L << 32, 40);
+        assertEquals(8L << 32, index.location(42));
+        assertEquals(40, index.length(42));
+        assertEquals(1, index.size());
+
+        assertTrue(index.remove(42));
+        assertFalse(index.remove(42));
+        assertEquals(-1, index.location(42));
+        assertEquals(-1, index.length(42));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void reservedKeys() {
+        // 0 和 -1 是空槽和删除标记，按 1 存
+        LongIndex index = new LongIndex(4);
+        index.put(0, 5, 1);
+        index.put(-1, 6, 2);
+
+        assertEquals(1, index.size());
+        assertEquals(6, index.location(1));
+    }
+
+    @Test
+    public void touch_marksReferencedUntilOverwritten() {
+        LongIndex index = new LongIndex(4);
+        index.put(1, 10, 1);
+        assertFalse(index.isReferenced(1));
+
+        assertEquals(10, index.touch(1));
+        assertTrue(index.isReferenced(1));
+
+        index.put(1, 11, 1);
+        assertFalse(index.isReferenced(1));
+        assertEquals(-1, index.touch(2));
+    }
+
+    @Test
+    public void growsAndReusesDeletedSlots() {
+        LongIndex index = new LongIndex(16);
+        for (long k = 1; k <= 10000; k++) {
+            index.put(k * 0x100000001L, k, (int) k);
+        }
+        for (long k = 1; k <= 10000; k += 2) {
+            assertTrue(index.remove(k * 0x100000001L));
+        }
+        // 反复删了再插，删除标记不能把表占满
+        for (int round = 0; round < 5; round++) {
+            for (long k = 20001; k <= 25000; k++) {
+                index.put(k * 0x100000001L, k, 1);
+            }
+            for (long k = 20001; k <= 25000; k++) {
+                index.remove(k * 0x100000001L);
+            }
+        }
+
+        assertEquals(5000, index.size());
+        for (long k = 1; k <= 10000; k++) {
+            long key = k * 0x100000001L;
+            if (k % 2 == 1) {
+                assertFalse(index.contains(key));
+            } else {
+                assertEquals(k, index.location(key));
+                assertEquals((int) k, index.length(key));
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.feedx.image;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MemoryTrimmerTest {
+
+    private final AtomicInteger restored = new AtomicInteger();
+    private MemoryTrimmer trimmer;
+    private MemoryCache cache;
+
+    @Before
+    public void setUp() {
+        trimmer = new MemoryTrimmer();
+        cache = new MemoryCache() {
+            @Override
+            public void restore() {
+                restored.incrementAndGet();
+                super.restore();
+            }
+        };
+        trimmer.register(cache);
+    }
+
+    @Test
+    public void foregroundTrim_restoresAfterDelay() {
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        ShadowLooper.idleMainLooper(30, TimeUnit.SECONDS);
+        assertEquals(0, restored.get());
+
+        ShadowLooper.idleMainLooper(31, TimeUnit.SECONDS);
+        assertEquals(1, restored.get());
+    }
+
+    @Test
+    public void backgroundTrim_waitsForNextStart() {
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        // 前台时排的恢复也不再生效
+        ShadowLooper.idleMainLooper(5, TimeUnit.MINUTES);
+        assertEquals(0, restored.get());
+
+        // 后台期间的前台级别 trim 也不排恢复
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        ShadowLooper.idleMainLooper(5, TimeUnit.MINUTES);
+        assertEquals(0, restored.get());
+
+        trimmer.onActivityStarted(null);
+        assertEquals(1, restored.get());
+        trimmer.onActivityStarted(null);
+        assertEquals(1, restored.get());
+    }
+}
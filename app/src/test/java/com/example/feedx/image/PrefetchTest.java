@@ -0,0 +1,168 @@
+package com.example.feedx.image;
+
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.feedx.pool.ThreadPoolManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PrefetchTest {
+
+    /**
+     * 不走磁盘的缓存，url 以 boom 结尾时 get 抛异常
+     */
+    static class MapCache implements ImageCache<Bitmap> {
+        final Map<String, Bitmap> map = new ConcurrentHashMap<>();
+
+        @Override
+        public Bitmap get(String url) {
+            if (url.endsWith("boom")) {
+                throw new IllegalStateException("expected");
+            }
+            return map.get(url);
+        }
+
+        @Override
+        public void put(String url, Bitmap bmp) {
+            map.put(url, bmp);
+        }
+    }
+
+    private MockWebServer server;
+    private ImageLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        final byte[] png = png();
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse()
+                        .setHeader("Content-Type", "image/png")
+                        .setBody(new Buffer().write(png));
+            }
+        });
+        server.start();
+        loader = new ImageLoader(ApplicationProvider.getApplicationContext());
+        loader.setImageCache(new MapCache());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private String url(String name) {
+        return server.url("/img/" + name).toString();
+    }
+
+    private static void awaitDone(Prefetch prefetch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!prefetch.isDone()) {
+            assertTrue("timed out", System.nanoTime() - deadline < 0);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void runtimeException_doesNotStall() throws Exception {
+        Prefetch prefetch = loader.prefetch(Arrays.asList(url("boom"), url("a.png"), url("b.png")),
+                ImageLoader.PREFETCH_CONCURRENCY_LOW);
+
+        awaitDone(prefetch);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void budget_sharedAcrossCalls() throws Exception {
+        loader.setPrefetchBudget(1);
+        Prefetch first = loader.prefetch(Arrays.asList(url("a.png"), url("b.png")),
+                ImageLoader.PREFETCH_CONCURRENCY_LOW);
+        awaitDone(first);
+        assertEquals(1, server.getRequestCount());
+
+        // 预算没有按次重置
+        Prefetch second = loader.prefetch(Collections.singletonList(url("c.png")),
+                ImageLoader.PREFETCH_CONCURRENCY_LOW);
+        awaitDone(second);
+        assertEquals(0, second.getLoadedBytes());
+        assertEquals(1, server.getRequestCount());
+
+        // 预加载的图显示后退回预算
+        loader.displayImage(url("a.png"), new ImageView(ApplicationProvider.getApplicationContext()));
+        Prefetch third = loader.prefetch(Collections.singletonList(url("c.png")),
+                ImageLoader.PREFETCH_CONCURRENCY_LOW);
+        awaitDone(third);
+        assertTrue(third.getLoadedBytes() > 0);
+    }
+
+    @Test
+    public void cancelAll_stopsPrefetchAndReleasesSlots() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final byte[] png = png();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                release.await(5, TimeUnit.SECONDS);
+                return new MockResponse()
+                        .setHeader("Content-Type", "image/png")
+                        .setBody(new Buffer().write(png));
+            }
+        });
+        Object page = new Object();
+        loader.setTag(page);
+        // 比线程数多，有一部分排在线程池队列里
+        int concurrency = ThreadPoolManager.CORE_POOL_SIZE + 4;
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < concurrency * 2; i++) {
+            urls.add(url(i + ".png"));
+        }
+        Prefetch prefetch = loader.prefetch(urls, concurrency);
+
+        ThreadPoolManager.getInstance().cancelAll(page);
+        release.countDown();
+
+        assertTrue(prefetch.isCancelled());
+        awaitDone(prefetch);
+        assertTrue(server.getRequestCount() <= ThreadPoolManager.CORE_POOL_SIZE);
+    }
+
+    private static byte[] png() throws Exception {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.feedx.image;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SegmentDiskCacheTest {
+
+    /**
+     * 原样存取字节
+     */
+    static final ImageCodec<byte[]> BYTES = new ImageCodec<byte[]>() {
+        @Override
+        public byte[] decode(byte[] data, int offset, int length) {
+            return Arrays.copyOfRange(data, offset, offset + length);
+        }
+
+        @Override
+        public byte[] encode(byte[] image) {
+            return image;
+        }
+
+        @Override
+        public int sizeOf(byte[] image) {
+            return image.length;
+        }
+    };
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] bytes(String s, int size) {
+        byte[] b = new byte[size];
+        byte[] src = s.getBytes();
+        for (int i = 0; i < size; i++) {
+            b[i] = src[i % src.length];
+        }
+        return b;
+    }
+
+    /**
+     * 维护任务在线程池里跑，等到条件成立
+     */
+    private interface Condition {
+        boolean met();
+    }
+
+    private static void await(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.met()) {
+            assertTrue("timed out", System.nanoTime() - deadline < 0);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void putGet() throws Exception {
+        SegmentDiskCache<byte[]> cache = new SegmentDiskCache<>(tmp.newFolder(), BYTES);
+        cache.putBytes("http://a/1.jpg", "one".getBytes());
+        cache.putBytes("http://a/2.jpg", "two".getBytes());
+        cache.putBytes("http://a/1.jpg", "uno".getBytes());
+
+        assertArrayEquals("uno".getBytes(), cache.getBytes("http://a/1.jpg"));
+        assertArrayEquals("two".getBytes(), cache.get("http://a/2.jpg"));
+        assertNull(cache.getBytes("http://a/3.jpg"));
+        assertTrue(cache.contains("http://a/2.jpg"));
+        assertEquals(2, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void remove_survivesReopen() throws Exception {
+        File dir = tmp.newFolder();
+        SegmentDiskCache<byte[]> cache = new SegmentDiskCache<>(dir, BYTES);
+        cache.putBytes("a", "1".getBytes());
+        cache.putBytes("b", "2".getBytes());
+        cache.remove("a");
+        assertNull(cache.getBytes("a"));
+        cache.close();
+
+        // 删除记录回放
+        cache = new SegmentDiskCache<>(dir, BYTES);
+        assertNull(cache.getBytes("a"));
+        assertArrayEquals("2".getBytes(), cache.getBytes("b"));
+        assertEquals(1, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void reopen_acrossSegments() throws Exception {
+        File dir = tmp.newFolder();
+        SegmentDiskCache<byte[]> cache = new SegmentDiskCache<>(dir, 1024 * 1024, 1024, BYTES);
+        for (int i = 0; i < 50; i++) {
+            cache.putBytes("url" + i, bytes("v" + i, 100));
+        }
+        int segments = cache.getSegmentCount();
+        assertTrue(segments > 1);
+        cache.close();
+
+        cache = new SegmentDiskCache<>(dir, 1024 * 1024, 1024, BYTES);
+        assertEquals(segments, cache.getSegmentCount());
+        assertEquals(50, cache.size());
+        for (int i = 0; i < 50; i++) {
+            assertArrayEquals(bytes("v" + i, 100), cache.getBytes("url" + i));
+        }
+        cache.close();
+    }
+
+    @Test
+    public void reopen_truncatesTornWrite() throws Exception {
+        File dir = tmp.newFolder();
+        SegmentDiskCache<byte[]> cache = new SegmentDiskCache<>(dir, BYTES);
+        cache.putBytes("a", "1".getBytes());
+        cache.close();
+        // 模拟写到一半断电
+        File data = new File(dir, "1.dat");
+        RandomAccessFile raf = new RandomAccessFile(data, "rw");
+        raf.seek(raf.length());
+        raf.write(new byte[]{0x46, 0x58, 0x44});
+        raf.close();
+
+        cache = new SegmentDiskCache<>(dir, BYTES);
+        assertArrayEquals("1".getBytes(), cache.getBytes("a"));
+        cache.putBytes("b", "2".getBytes());
+        assertArrayEquals("2".getBytes(), cache.getBytes("b"));
+        cache.close();
+    }
+
+    @Test
+    public void compaction_dropsDeadSegments() throws Exception {
+        final SegmentDiskCache<byte[]> cache = new SegmentDiskCache<>(tmp.newFolder(), 1024 * 1024, 1024, BYTES);
+        // 同样 4 个 key 反复覆盖，老段几乎全是失效数据
+        for (int i = 0; i < 200; i++) {
+            cache.putBytes("key" + (i % 4), bytes("v" + i, 200));
+        }
+        await(new Condition() {
+            @Override
+            public boolean met() {
+                return cache.getSegmentCount() <= 3;
+            }
+        });
+        for (int i = 196; i < 200; i++) {
+            assertArrayEquals(bytes("v" + i, 200), cache.getBytes("key" + (i % 4)));
+        }
+        assertEquals(4, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void eviction_keepsWithinMaxSize() throws Exception {
+        final SegmentDiskCache<byte[]> cache = new SegmentDiskCache<>(tmp.newFolder(), 4096, 1024, BYTES);
+        for (int i = 0; i < 100; i++) {
+            cache.putBytes("url" + i, bytes("v" + i, 200));
+        }
+        await(new Condition() {
+            @Override
+            public boolean met() {
+                return cache.getTotalSize() <= 4096;
+            }
+        });
+        assertNull(cache.getBytes("url0"));
+        assertArrayEquals(bytes("v99", 200), cache.getBytes("url99"));
+        cache.close();
+    }
+
+    @Test
+    public void interruptedReader_doesNotBreakCache() throws Exception {
+        SegmentDiskCache<byte[]> cache = new SegmentDiskCache<>(tmp.newFolder(), BYTES);
+        cache.putBytes("a", "1".getBytes());
+
+        // cancelAll(tag, true) 中断正在读写的工作线程；FileChannel 会因此关掉整段
+        Thread.currentThread().interrupt();
+        try {
+            assertArrayEquals("1".getBytes(), cache.getBytes("a"));
+            cache.putBytes("b", "2".getBytes());
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertArrayEquals("1".getBytes(), cache.getBytes("a"));
+        assertArrayEquals("2".getBytes(), cache.getBytes("b"));
+        cache.putBytes("c", "3".getBytes());
+        assertArrayEquals("3".getBytes(), cache.getBytes("c"));
+        cache.close();
+    }
+
+    /**
+     * 写文件不持有整个缓存的锁后，并发写和换段下内存索引仍要和重新打开时回放的结果一致
+     */
+    @Test
+    public void concurrentPuts_matchAfterReopen() throws Exception {
+        File dir = tmp.newFolder();
+        final SegmentDiskCache<byte[]> cache = new SegmentDiskCache<>(dir, 1024 * 1024, 2048, BYTES);
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            final int id = t;
+            writers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 200; i++) {
+                        String url = "url" + (i % 20);
+                        if (i % 7 == id) {
+                            cache.remove(url);
+                        } else {
+                            cache.putBytes(url, bytes("w" + id + "-" + i, 60));
+                        }
+                        // 读只查索引，不等别的线程写盘
+                        cache.getBytes("url" + ((i + 10) % 20));
+                    }
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        byte[][] expected = new byte[20][];
+        for (int i = 0; i < 20; i++) {
+            expected[i] = cache.getBytes("url" + i);
+        }
+        int size = cache.size();
+        cache.close();
+
+        SegmentDiskCache<byte[]> reopened = new SegmentDiskCache<>(dir, 1024 * 1024, 2048, BYTES);
+        assertEquals(size, reopened.size());
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals("url" + i, expected[i], reopened.getBytes("url" + i));
+        }
+        reopened.close();
+    }
+
+    /**
+     * 十万条重新打开：封存段读二进制索引，不扫数据文件
+     */
+    @Test
+    public void reopen_100kEntries() throws Exception {
+        File dir = tmp.newFolder();
+        SegmentDiskCache<byte[]> cache = new SegmentDiskCache<>(dir, 64L * 1024 * 1024, 1024 * 1024, BYTES);
+        byte[] value = bytes("x", 16);
+        for (int i = 0; i < 100000; i++) {
+            cache.putBytes("https://cdn.example.com/img/" + i + ".jpg", value);
+        }
+        cache.close();
+
+        cache = new SegmentDiskCache<>(dir, 64L * 1024 * 1024, 1024 * 1024, BYTES);
+        assertEquals(100000, cache.size());
+        assertArrayEquals(value, cache.getBytes("https://cdn.example.com/img/99999.jpg"));
+        cache.close();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.feedx.image;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SizedLruCacheTest {
+
+    private static SizedLruCache<String, String> byLength(int maxSize) {
+        return new SizedLruCache<String, String>(maxSize) {
+            @Override
+            protected int sizeOf(String key, String value) {
+                return value.length();
+            }
+        };
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() {
+        SizedLruCache<String, String> cache = byLength(6);
+        cache.put("a", "aa");
+        cache.put("b", "bb");
+        cache.put("c", "cc");
+        // 访问 a 后，最久没用的是 b
+        assertEquals("aa", cache.get("a"));
+        cache.put("d", "dd");
+
+        assertNull(cache.get("b"));
+        assertEquals("aa", cache.get("a"));
+        assertEquals("cc", cache.get("c"));
+        assertEquals(6, cache.size());
+    }
+
+    @Test
+    public void put_replacingKeepsSizeConsistent() {
+        SizedLruCache<String, String> cache = byLength(10);
+        cache.put("a", "aaaa");
+        assertEquals("aaaa", cache.put("a", "a"));
+        assertEquals(1, cache.size());
+        cache.remove("a");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void resize_trimsImmediately() {
+        SizedLruCache<String, String> cache = byLength(10);
+        cache.put("a", "aaa");
+        cache.put("b", "bbb");
+        cache.put("c", "ccc");
+        cache.resize(4);
+
+        assertEquals(4, cache.maxSize());
+        assertEquals(3, cache.size());
+        assertNull(cache.get("a"));
+        assertEquals("ccc", cache.get("c"));
+    }
+
+    @Test
+    public void defaultSizeOf_countsEntries() {
+        SizedLruCache<String, String> cache = new SizedLruCache<>(2);
+        cache.put("a", "x");
+        cache.put("b", "y");
+        cache.put("c", "z");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("a"));
+    }
+}
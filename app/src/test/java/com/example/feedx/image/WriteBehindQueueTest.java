@@ -0,0 +1,102 @@
+package com.example.feedx.image;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindQueueTest {
+
+    /**
+     * 记下写入的值，前 failures 次 endBatch 抛异常
+     */
+    static class RecordingSink implements WriteBehindQueue.Sink<String> {
+        final Map<String, String> written = new ConcurrentHashMap<>();
+        final AtomicInteger failures;
+        volatile CountDownLatch gate = new CountDownLatch(0);
+
+        RecordingSink(int failures) {
+            this.failures = new AtomicInteger(failures);
+        }
+
+        @Override
+        public void write(String key, String value) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            written.put(key, value);
+        }
+
+        @Override
+        public void endBatch() {
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("expected");
+            }
+        }
+    }
+
+    private static void awaitWritten(RecordingSink sink, String key) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!sink.written.containsKey(key)) {
+            assertTrue("timed out", System.nanoTime() - deadline < 0);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void offer_writesAndKeepsLatest() throws Exception {
+        RecordingSink sink = new RecordingSink(0);
+        sink.gate = new CountDownLatch(1);
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>("test-writer", 16, 4, sink);
+        queue.offer("a", "1");
+        queue.offer("b", "1");
+        queue.offer("b", "2");
+        // 写完前读得到
+        assertEquals("2", queue.peek("b"));
+        sink.gate.countDown();
+
+        awaitWritten(sink, "b");
+        awaitWritten(sink, "a");
+        assertEquals("2", sink.written.get("b"));
+    }
+
+    @Test
+    public void offer_shedsOldestWhenFull() throws Exception {
+        RecordingSink sink = new RecordingSink(0);
+        sink.gate = new CountDownLatch(1);
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>("test-writer", 2, 1, sink);
+        queue.offer("a", "1");
+        // 等写线程取走 a，卡在 gate 上
+        while (queue.size() > 0) {
+            Thread.sleep(5);
+        }
+        assertTrue(queue.offer("b", "1"));
+        assertTrue(queue.offer("c", "1"));
+        assertFalse(queue.offer("d", "1"));
+        assertEquals(1, queue.getDroppedCount());
+        assertNull(queue.peek("b"));
+        sink.gate.countDown();
+        awaitWritten(sink, "d");
+    }
+
+    @Test
+    public void endBatchThrows_writerKeepsRunning() throws Exception {
+        RecordingSink sink = new RecordingSink(1);
+        WriteBehindQueue<String> queue = new WriteBehindQueue<>("test-writer", 16, 4, sink);
+        queue.offer("a", "1");
+        awaitWritten(sink, "a");
+        Thread.sleep(50);
+        // 出错的那批不再挂在 mWriting 上
+        assertNull(queue.peek("a"));
+
+        queue.offer("b", "1");
+        awaitWritten(sink, "b");
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.feedx.pool;
+
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class FrameDispatcherTest {
+
+    private final List<Integer> ran = Collections.synchronizedList(new ArrayList<Integer>());
+
+    @Before
+    public void setUp() {
+        // 主线程上的 post 不立即执行，由用例控制什么时候跑一帧
+        ShadowLooper.pauseMainLooper();
+    }
+
+    private Runnable record(final int i) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                assertSame(Looper.getMainLooper(), Looper.myLooper());
+                ran.add(i);
+            }
+        };
+    }
+
+    @Test
+    public void post_fromWorker_runsOnMainInOrder() throws Exception {
+        final FrameDispatcher dispatcher = new FrameDispatcher();
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 3; i++) {
+                    dispatcher.post(record(i));
+                }
+            }
+        });
+        worker.start();
+        worker.join();
+        assertTrue(ran.isEmpty());
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(Arrays.asList(0, 1, 2), ran);
+    }
+
+    @Test
+    public void doFrame_stopsAtBudget() {
+        FrameDispatcher dispatcher = new FrameDispatcher();
+        dispatcher.setFrameBudget(0, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 3; i++) {
+            dispatcher.post(record(i));
+        }
+
+        // 预算为 0，每帧只投递一个
+        dispatcher.doFrame(0);
+        assertEquals(Arrays.asList(0), ran);
+        dispatcher.doFrame(0);
+        assertEquals(Arrays.asList(0, 1), ran);
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(Arrays.asList(0, 1, 2), ran);
+    }
+
+    @Test
+    public void cancelAll_dropsFinishedResultWaitingForFrame() throws Exception {
+        Object page = new Object();
+        final XAsync<Integer> request = new XAsync<Integer>() {
+            @Override
+            protected Integer task() {
+                return 1;
+            }
+
+            @Override
+            protected void callback(Integer result) {
+                ran.add(result);
+            }
+        };
+        request.setTag(page);
+        Thread worker = new Thread(request);
+        worker.start();
+        worker.join();
+
+        // task() 已结束，结果在等下一帧
+        ThreadPoolManager.getInstance().cancelAll(page);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertTrue(request.isCancelled());
+        assertTrue(ran.isEmpty());
+    }
+
+    @Test
+    public void doFrame_exceptionKeepsRestScheduled() {
+        FrameDispatcher dispatcher = new FrameDispatcher();
+        dispatcher.post(record(0));
+        dispatcher.post(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("expected");
+            }
+        });
+        dispatcher.post(record(2));
+
+        try {
+            dispatcher.doFrame(0);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(Arrays.asList(0), ran);
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(Arrays.asList(0, 2), ran);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.feedx.pool;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class OpenGateTest {
+
+    /**
+     * 记录是否执行、是否被取消
+     */
+    static class Task implements Runnable, TaggedTask {
+        final Object tag;
+        final AtomicBoolean ran = new AtomicBoolean();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Task(Object tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public void run() {
+            ran.set(true);
+            done.countDown();
+        }
+
+        @Override
+        public Object getTag() {
+            return tag;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled.set(true);
+        }
+    }
+
+    @Test
+    public void queuedUntilOpen() throws Exception {
+        OpenGate gate = new OpenGate();
+        final List<Integer> ran = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(3);
+        for (int i = 0; i < 2; i++) {
+            final int n = i;
+            gate.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ran.add(n);
+                    done.countDown();
+                }
+            });
+        }
+        Thread.sleep(50);
+        assertTrue(ran.isEmpty());
+
+        gate.open();
+        // 打开后提交的直接进线程池
+        gate.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(ran.containsAll(Arrays.asList(0, 1)));
+    }
+
+    @Test
+    public void cancelAll_beforeOpen_dropsQueuedTasks() throws Exception {
+        Object page = new Object();
+        OpenGate gate = new OpenGate();
+        Task cancelled = new Task(page);
+        Task other = new Task(new Object());
+        gate.execute(cancelled);
+        gate.execute(other);
+
+        assertEquals(1, ThreadPoolManager.getInstance().cancelAll(page));
+        assertTrue(cancelled.cancelled.get());
+        assertFalse(other.cancelled.get());
+
+        gate.open();
+        assertTrue(other.done.await(5, TimeUnit.SECONDS));
+        // cancelled 排在 other 前面，没被摘掉的话这时也早该执行了
+        Thread.sleep(50);
+        assertFalse(cancelled.ran.get());
+        // 打开后不再挂在 ThreadPoolManager 上
+        assertEquals(0, gate.cancelAll(page));
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.feedx.pool;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScratchTest {
+
+    @After
+    public void tearDown() {
+        Scratch.detach();
+    }
+
+    @Test
+    public void buffersReusedOnSameThread() {
+        Scratch scratch = Scratch.attach();
+        assertSame(scratch, Scratch.current());
+        assertSame(scratch.tempStorage(), scratch.tempStorage());
+        byte[] buffer = scratch.buffer(10 * 1024);
+        assertSame(buffer, scratch.buffer(12 * 1024));
+        assertSame(scratch.output(), scratch.output());
+    }
+
+    @Test
+    public void trim_dropsRetainedBuffers() {
+        Scratch scratch = Scratch.attach();
+        byte[] temp = scratch.tempStorage();
+        byte[] buffer = scratch.buffer(10 * 1024);
+        Scratch.Output output = scratch.output();
+
+        Scratch.trim();
+
+        assertNotSame(temp, scratch.tempStorage());
+        assertNotSame(buffer, scratch.buffer(10 * 1024));
+        assertNotSame(output, scratch.output());
+        // trim 之后重新分配的照常复用
+        assertSame(scratch.tempStorage(), scratch.tempStorage());
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.feedx.pool;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class XThreadPoolTest {
+
+    /**
+     * 记下建出的线程，用来数实际活着的线程
+     */
+    static class Threads implements ThreadFactory {
+        final List<Thread> threads = new ArrayList<>();
+
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "XThreadPoolTest");
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                @Override
+                public void uncaughtException(Thread t, Throwable e) {
+                    // taskThrows_workerReplaced 故意抛的
+                }
+            });
+            threads.add(t);
+            return t;
+        }
+
+        synchronized int alive() {
+            int n = 0;
+            for (Thread t : threads) {
+                if (t.isAlive()) {
+                    n++;
+                }
+            }
+            return n;
+        }
+    }
+
+    private static final RejectedPolicyHandler FAIL = new RejectedPolicyHandler() {
+        @Override
+        public void rejectedPolicy(Runnable r, int reason) {
+            if (r != null) {
+                throw new AssertionError("rejected " + reason);
+            }
+        }
+    };
+
+    @Test
+    public void shrinkCore_keepsRunningTasks() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            Threads threads = new Threads();
+            XThreadPool pool = new XThreadPool(9, 9, 10, TimeUnit.MILLISECONDS,
+                    new XBlockList<Runnable>(64), threads, FAIL);
+            final CountDownLatch started = new CountDownLatch(9);
+            for (int i = 0; i < 9; i++) {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                    }
+                });
+            }
+            assertTrue(started.await(2, TimeUnit.SECONDS));
+
+            // MemoryTrimmer 在 RUNNING_CRITICAL 时就是这么调的
+            pool.setCorePoolSize(1);
+            Thread.sleep(50);
+            final CountDownLatch ran = new CountDownLatch(1);
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ran.countDown();
+                }
+            });
+            assertTrue("round " + round, ran.await(2, TimeUnit.SECONDS));
+
+            Thread.sleep(100);
+            assertEquals(1, pool.getPoolSize());
+            assertEquals(pool.getPoolSize(), threads.alive());
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void taskThrows_workerReplaced() throws Exception {
+        Threads threads = new Threads();
+        XThreadPool pool = new XThreadPool(1, 1, 10, TimeUnit.MILLISECONDS,
+                new XBlockList<Runnable>(16), threads, FAIL);
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new RuntimeException("expected");
+            }
+        });
+        final CountDownLatch ran = new CountDownLatch(1);
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        });
+        assertTrue(ran.await(2, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, pool.getPoolSize());
+        assertEquals(1, threads.alive());
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.feedx.headless;
+
+import com.example.feedx.image.HotSet;
+import com.example.feedx.image.ImageHttp;
+import com.example.feedx.image.ImagePipeline;
+import com.example.feedx.image.LruImageCache;
+import com.example.feedx.image.SegmentDiskCache;
+import com.example.feedx.pool.ThreadPoolManager;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务端批量处理 / 吞吐基准：读一个每行一个 url 的文件，用和 App 相同的缓存和线程池加载，
+ * 每轮前清空内存缓存，第一轮走网络（缓存目录已有数据时走磁盘），之后各轮测磁盘读 + 解码；
+ * 用法：BulkLoad &lt;url 文件&gt; &lt;缓存目录&gt; [轮数]
+ */
+public class BulkLoad {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: BulkLoad <url file> <cache dir> [rounds]");
+            System.exit(2);
+        }
+        List<String> urls = readUrls(new File(args[0]));
+        File cacheDir = new File(args[1]);
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        // ImageIO 解不了 WebP
+        ImageHttp.setAccept("image/png,image/jpeg,image/*;q=0.8");
+        ImageIOCodec codec = new ImageIOCodec();
+        LruImageCache<BufferedImage> memoryCache = new LruImageCache<>(codec);
+        memoryCache.setHotSet(new HotSet(new File(cacheDir, "hotset")));
+        SegmentDiskCache<BufferedImage> diskCache =
+                new SegmentDiskCache<>(new File(cacheDir, "segments"), codec);
+        ImagePipeline<BufferedImage> pipeline =
+                new ImagePipeline<>(codec, memoryCache, diskCache, new ImageHttp());
+
+        System.out.println(String.format(Locale.US, "%d urls, %d threads",
+                urls.size(), ThreadPoolManager.CORE_POOL_SIZE));
+        for (int round = 1; round <= rounds; round++) {
+            memoryCache.clear();
+            runRound(round, pipeline, urls);
+        }
+        diskCache.close();
+        // 线程池的线程不是守护线程
+        System.exit(0);
+    }
+
+    private static void runRound(int round, ImagePipeline<BufferedImage> pipeline, List<String> urls)
+            throws InterruptedException {
+        long disk = pipeline.getDiskHits();
+        long network = pipeline.getNetworkLoads();
+        long bytes = pipeline.getNetworkBytes();
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(urls.size());
+        // url 很多时不一次全塞进队列，在途的最多线程数的两倍
+        final Semaphore inFlight = new Semaphore(ThreadPoolManager.CORE_POOL_SIZE * 2);
+        ImagePipeline.Callback<BufferedImage> callback = new ImagePipeline.Callback<BufferedImage>() {
+            @Override
+            public void onLoaded(String url, BufferedImage image) {
+                inFlight.release();
+                done.countDown();
+            }
+
+            @Override
+            public void onFailed(String url, Exception e) {
+                System.err.println(url + ": " + e);
+                failed.incrementAndGet();
+                inFlight.release();
+                done.countDown();
+            }
+        };
+        long start = System.nanoTime();
+        for (String url : urls) {
+            inFlight.acquire();
+            pipeline.loadAsync(url, callback);
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(Locale.US,
+                "round %d: %.2fs, %.1f images/s, disk %d, network %d (%.1f MB), failed %d",
+                round, seconds, urls.size() / seconds,
+                pipeline.getDiskHits() - disk,
+                pipeline.getNetworkLoads() - network,
+                (pipeline.getNetworkBytes() - bytes) / 1024.0 / 1024.0,
+                failed.get()));
+    }
+
+    private static List<String> readUrls(File file) throws IOException {
+        List<String> urls = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    urls.add(line);
+                }
+            }
+        }
+        return urls;
+    }
+}
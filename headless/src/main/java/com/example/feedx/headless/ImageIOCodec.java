@@ -0,0 +1,92 @@
+package com.example.feedx.headless;
+
+import com.example.feedx.image.ImageCodec;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * 纯 JVM 的 {@link ImageCodec}，javax.imageio 解码 PNG/JPEG/GIF/BMP（不支持 WebP，
+ * 请求时 Accept 不要带 image/webp）；编码不透明的用 JPEG，带透明的用 PNG
+ */
+public class ImageIOCodec implements ImageCodec<BufferedImage> {
+
+    static {
+        // 默认每个流都在临时目录建缓存文件，全是内存里的字节，用不着，并发时还多一份磁盘 io
+        ImageIO.setUseCache(false);
+    }
+
+    private final float mQuality;
+
+    public ImageIOCodec() {
+        this(0.8f);
+    }
+
+    /**
+     * @param quality JPEG 质量，0 ~ 1
+     */
+    public ImageIOCodec(float quality) {
+        mQuality = Math.max(0f, Math.min(quality, 1f));
+    }
+
+    @Override
+    public BufferedImage decode(byte[] data, int offset, int length) {
+        try {
+            return ImageIO.read(new ByteArrayInputStream(data, offset, length));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] encode(BufferedImage image) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            if (image.getColorModel().hasAlpha()) {
+                ImageIO.write(image, "png", baos);
+            } else {
+                writeJpeg(image, baos);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return baos.toByteArray();
+    }
+
+    private void writeJpeg(BufferedImage image, ByteArrayOutputStream out) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            ImageIO.write(image, "png", out);
+            return;
+        }
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(mQuality);
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * 按每像素 4 字节估算，和 Android 上 ARGB_8888 的 Bitmap 一致
+     */
+    @Override
+    public int sizeOf(BufferedImage image) {
+        return image.getWidth() * image.getHeight() * 4;
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.feedx.stress;
+
+import com.example.feedx.pool.XBlockList;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+import org.openjdk.jcstress.infra.results.II_Result;
+import org.openjdk.jcstress.infra.results.IZI_Result;
+import org.openjdk.jcstress.infra.results.ZZI_Result;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * XBlockList 的并发正确性：每个元素恰好出队一次，计数和链表一致
+ */
+public class XBlockListStress {
+
+    private static int drainSum(XBlockList<Integer> list, List<Integer> out) {
+        list.drainToList(out);
+        int sum = 0;
+        for (Integer i : out) {
+            sum += i;
+        }
+        return sum;
+    }
+
+    /**
+     * 两个 offer 同时入队，两个都在且计数为 2
+     */
+    @JCStressTest
+    @Outcome(id = "2, 3", expect = ACCEPTABLE, desc = "both enqueued")
+    @Outcome(expect = FORBIDDEN, desc = "element lost or count wrong")
+    @State
+    public static class OfferOffer {
+        private final XBlockList<Integer> list = new XBlockList<>();
+
+        @Actor
+        public void actor1() {
+            list.offer(1);
+        }
+
+        @Actor
+        public void actor2() {
+            list.offer(2);
+        }
+
+        @Arbiter
+        public void arbiter(II_Result r) {
+            r.r1 = list.size();
+            r.r2 = drainSum(list, new ArrayList<Integer>());
+        }
+    }
+
+    /**
+     * 容量 1 时两个 offer 只能成功一个
+     */
+    @JCStressTest
+    @Outcome(id = {"true, false, 1", "false, true, 1"}, expect = ACCEPTABLE, desc = "exactly one succeeds")
+    @Outcome(expect = FORBIDDEN, desc = "over capacity or both failed")
+    @State
+    public static class BoundedOffer {
+        private final XBlockList<Integer> list = new XBlockList<>(1);
+
+        @Actor
+        public void actor1(ZZI_Result r) {
+            r.r1 = list.offer(1);
+        }
+
+        @Actor
+        public void actor2(ZZI_Result r) {
+            r.r2 = list.offer(2);
+        }
+
+        @Arbiter
+        public void arbiter(ZZI_Result r) {
+            r.r3 = list.size();
+        }
+    }
+
+    /**
+     * 空队列上 offer 和 poll 并发：要么取到，要么还留在队列里
+     */
+    @JCStressTest
+    @Outcome(id = "1, 0", expect = ACCEPTABLE, desc = "poll got it")
+    @Outcome(id = "-1, 1", expect = ACCEPTABLE, desc = "poll first, element stays queued")
+    @Outcome(expect = FORBIDDEN, desc = "lost or taken twice")
+    @State
+    public static class OfferPoll {
+        private final XBlockList<Integer> list = new XBlockList<>();
+
+        @Actor
+        public void actor1() {
+            list.offer(1);
+        }
+
+        @Actor
+        public void actor2(II_Result r) {
+            try {
+                Integer x = list.poll(0, TimeUnit.NANOSECONDS);
+                r.r1 = x == null ? -1 : x;
+            } catch (InterruptedException e) {
+                r.r1 = -2;
+            }
+        }
+
+        @Arbiter
+        public void arbiter(II_Result r) {
+            r.r2 = list.size();
+        }
+    }
+
+    /**
+     * remove 和 poll 争同一个队头，元素不能被两边都拿到
+     */
+    @JCStressTest
+    @Outcome(id = "1, false, 1", expect = ACCEPTABLE, desc = "poll took 1 first")
+    @Outcome(id = "2, true, 0", expect = ACCEPTABLE, desc = "remove unlinked 1 first, poll got 2")
+    @Outcome(expect = FORBIDDEN, desc = "element dequeued twice or count wrong")
+    @State
+    public static class RemovePoll {
+        private final XBlockList<Integer> list = new XBlockList<>();
+
+        {
+            list.offer(1);
+            list.offer(2);
+        }
+
+        @Actor
+        public void actor1(IZI_Result r) {
+            try {
+                Integer x = list.poll(0, TimeUnit.NANOSECONDS);
+                r.r1 = x == null ? -1 : x;
+            } catch (InterruptedException e) {
+                r.r1 = -2;
+            }
+        }
+
+        @Actor
+        public void actor2(IZI_Result r) {
+            r.r2 = list.remove(1);
+        }
+
+        @Arbiter
+        public void arbiter(IZI_Result r) {
+            r.r3 = list.size();
+        }
+    }
+
+    /**
+     * removeIf 摘掉队尾时要修正 last，之后的 offer 不能挂到摘掉的节点上
+     */
+    @JCStressTest
+    @Outcome(id = "2, 0, 1", expect = ACCEPTABLE, desc = "offer first, both removed")
+    @Outcome(id = "1, 1, 2", expect = ACCEPTABLE, desc = "removeIf first, 2 stays")
+    @Outcome(expect = FORBIDDEN, desc = "links and count disagree")
+    @State
+    public static class RemoveIfOffer {
+        private final XBlockList<Integer> list = new XBlockList<>();
+
+        {
+            list.offer(1);
+        }
+
+        @Actor
+        public void actor1() {
+            list.offer(2);
+        }
+
+        @Actor
+        public void actor2(III_Result r) {
+            r.r1 = list.removeIf(new XBlockList.Filter<Integer>() {
+                @Override
+                public boolean accept(Integer e) {
+                    return true;
+                }
+            }, null);
+        }
+
+        @Arbiter
+        public void arbiter(III_Result r) {
+            r.r2 = list.size();
+            list.offer(3);
+            List<Integer> out = new ArrayList<>();
+            list.drainToList(out);
+            r.r3 = out.size();
+        }
+    }
+
+    /**
+     * 满队列上阻塞的 put 被中断：要么抛 InterruptedException 且没入队，
+     * 要么正常返回且元素在队列里，不能正常返回却没入队
+     */
+    @JCStressTest
+    @Outcome(id = "1, 1, 1", expect = ACCEPTABLE, desc = "poll made room, put succeeded")
+    @Outcome(id = "2, 1, 0", expect = ACCEPTABLE, desc = "put interrupted, nothing enqueued")
+    @Outcome(id = "1, 1, 0", expect = FORBIDDEN, desc = "put returned but element lost")
+    @Outcome(expect = FORBIDDEN, desc = "other")
+    @State
+    public static class InterruptedPut {
+        private final XBlockList<Integer> list = new XBlockList<>(1);
+        private volatile Thread putter;
+
+        {
+            list.offer(1);
+        }
+
+        @Actor
+        public void actor1(III_Result r) {
+            // 清掉上一轮可能残留的中断，再让 actor2 看到线程
+            Thread.interrupted();
+            putter = Thread.currentThread();
+            try {
+                list.put(2);
+                r.r1 = 1;
+            } catch (InterruptedException e) {
+                r.r1 = 2;
+            }
+            Thread.interrupted();
+        }
+
+        @Actor
+        public void actor2(III_Result r) {
+            Thread t;
+            while ((t = putter) == null) {
+                Thread.yield();
+            }
+            t.interrupt();
+            try {
+                Integer x = list.poll(0, TimeUnit.NANOSECONDS);
+                r.r2 = x == null ? -1 : x;
+            } catch (InterruptedException e) {
+                r.r2 = -2;
+            }
+        }
+
+        @Arbiter
+        public void arbiter(III_Result r) {
+            r.r3 = list.size();
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.feedx.stress;
+
+import com.example.feedx.pool.RejectedPolicyHandler;
+import com.example.feedx.pool.TaggedTask;
+import com.example.feedx.pool.XBlockList;
+import com.example.feedx.pool.XThreadPool;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * XThreadPool 的任务不丢：提交的每个任务要么执行，要么交给拒绝策略
+ */
+public class XThreadPoolStress {
+
+    /**
+     * 仲裁里等异步结果的上限，超时按当前值报告
+     */
+    private static final long WAIT_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private static final ThreadFactory DAEMON = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "XThreadPoolStress");
+            t.setDaemon(true);
+            return t;
+        }
+    };
+
+    static class Counts implements RejectedPolicyHandler {
+        final AtomicInteger ran = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+
+        @Override
+        public void rejectedPolicy(Runnable r, int reason) {
+            if (r != null) {
+                rejected.incrementAndGet();
+            }
+        }
+
+        Runnable task() {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    ran.incrementAndGet();
+                }
+            };
+        }
+
+        /**
+         * 等到执行加拒绝达到 n 个
+         */
+        void await(int n) {
+            long deadline = System.nanoTime() + WAIT_NANOS;
+            while (ran.get() + rejected.get() < n && System.nanoTime() - deadline < 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private static XThreadPool newPool(int core, int max, Counts counts) {
+        return new XThreadPool(core, max, 10, TimeUnit.MILLISECONDS,
+                new XBlockList<Runnable>(16), DAEMON, counts);
+    }
+
+    /**
+     * execute 和 shutdown 并发；核心数为 0 时任务走入队再补线程的路径
+     */
+    @JCStressTest
+    @Outcome(id = "1, 0", expect = ACCEPTABLE, desc = "ran")
+    @Outcome(id = "0, 1", expect = ACCEPTABLE, desc = "rejected")
+    @Outcome(expect = FORBIDDEN, desc = "task lost, or both ran and rejected")
+    @State
+    public static class ExecuteShutdown {
+        private final Counts counts = new Counts();
+        private final XThreadPool pool = newPool(0, 1, counts);
+
+        @Actor
+        public void actor1() {
+            pool.execute(counts.task());
+        }
+
+        @Actor
+        public void actor2() {
+            pool.shutdown();
+        }
+
+        @Arbiter
+        public void arbiter(II_Result r) {
+            counts.await(1);
+            r.r1 = counts.ran.get();
+            r.r2 = counts.rejected.get();
+        }
+    }
+
+    /**
+     * 同上，核心数为 1，任务直接交给新建的线程
+     */
+    @JCStressTest
+    @Outcome(id = "1, 0", expect = ACCEPTABLE, desc = "ran")
+    @Outcome(id = "0, 1", expect = ACCEPTABLE, desc = "rejected")
+    @Outcome(expect = FORBIDDEN, desc = "task lost, or both ran and rejected")
+    @State
+    public static class ExecuteShutdownCore {
+        private final Counts counts = new Counts();
+        private final XThreadPool pool = newPool(1, 1, counts);
+
+        @Actor
+        public void actor1() {
+            pool.execute(counts.task());
+        }
+
+        @Actor
+        public void actor2() {
+            pool.shutdown();
+        }
+
+        @Arbiter
+        public void arbiter(II_Result r) {
+            counts.await(1);
+            r.r1 = counts.ran.get();
+            r.r2 = counts.rejected.get();
+        }
+    }
+
+    /**
+     * 调小核心数时中断空闲线程，不能把正在提交的任务弄丢，线程数也不能超过上限
+     */
+    @JCStressTest
+    @Outcome(id = "2, 1", expect = ACCEPTABLE, desc = "both ran, pool size within max")
+    @Outcome(expect = FORBIDDEN, desc = "task lost or pool size over max")
+    @State
+    public static class ShrinkExecute {
+        private final Counts counts = new Counts();
+        private final XThreadPool pool = newPool(2, 2, counts);
+
+        {
+            pool.execute(counts.task());
+        }
+
+        @Actor
+        public void actor1() {
+            pool.setCorePoolSize(0);
+        }
+
+        @Actor
+        public void actor2() {
+            pool.execute(counts.task());
+        }
+
+        @Arbiter
+        public void arbiter(II_Result r) {
+            counts.await(2);
+            r.r1 = counts.ran.get() + counts.rejected.get();
+            r.r2 = pool.getPoolSize() <= 2 ? 1 : 0;
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 记下建出的线程，数实际活着的线程
+     */
+    static class LiveThreads implements ThreadFactory {
+        private final List<Thread> threads = new ArrayList<>();
+
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            Thread t = DAEMON.newThread(r);
+            threads.add(t);
+            return t;
+        }
+
+        synchronized int alive() {
+            int n = 0;
+            for (Thread t : threads) {
+                if (t.isAlive()) {
+                    n++;
+                }
+            }
+            return n;
+        }
+    }
+
+    /**
+     * 从 4 个空闲线程调到 1 个（MemoryTrimmer 的 RUNNING_CRITICAL）同时提交任务：
+     * 多出的线程退出时走 processWorkerExit 的补线程分支，任务要能执行，
+     * 稳定后线程数要等于实际活着的线程数，且为 1
+     */
+    @JCStressTest
+    @Outcome(id = "1, 1", expect = ACCEPTABLE, desc = "ran, pool size matches live threads")
+    @Outcome(id = "1, 0", expect = FORBIDDEN, desc = "pool size does not match live threads")
+    @Outcome(id = "0, .*", expect = FORBIDDEN, desc = "task never ran")
+    @State
+    public static class ShrinkToOne {
+        private static final int N = 4;
+        private final Counts counts = new Counts();
+        private final LiveThreads threads = new LiveThreads();
+        private final XThreadPool pool = new XThreadPool(N, N, 1, TimeUnit.MILLISECONDS,
+                new XBlockList<Runnable>(16), threads, counts);
+
+        {
+            // 先把 N 个线程都建出来，让它们空闲在队列上
+            final CountDownLatch started = new CountDownLatch(N);
+            for (int i = 0; i < N; i++) {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                    }
+                });
+            }
+            try {
+                started.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Actor
+        public void actor1() {
+            pool.setCorePoolSize(1);
+        }
+
+        @Actor
+        public void actor2() {
+            pool.execute(counts.task());
+        }
+
+        @Arbiter
+        public void arbiter(II_Result r) {
+            counts.await(1);
+            long deadline = System.nanoTime() + WAIT_NANOS;
+            while (!(pool.getPoolSize() == 1 && threads.alive() == 1) && System.nanoTime() - deadline < 0) {
+                Thread.yield();
+            }
+            r.r1 = counts.ran.get();
+            r.r2 = pool.getPoolSize() == threads.alive() ? 1 : 0;
+            pool.shutdown();
+        }
+    }
+
+    static class Tagged implements Runnable, TaggedTask {
+        final AtomicInteger ran;
+        volatile boolean cancelled;
+
+        Tagged(AtomicInteger ran) {
+            this.ran = ran;
+        }
+
+        @Override
+        public Object getTag() {
+            return "stress";
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void run() {
+            if (!cancelled) {
+                ran.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * cancelAll 和 execute 并发：任务要么执行，要么被取消，不会既不执行也没收到 cancel
+     */
+    @JCStressTest
+    @Outcome(id = "1", expect = ACCEPTABLE, desc = "ran or cancelled")
+    @Outcome(expect = FORBIDDEN, desc = "task lost")
+    @State
+    public static class CancelExecute {
+        private final Counts counts = new Counts();
+        private final XThreadPool pool = newPool(0, 1, counts);
+        private final Tagged task = new Tagged(counts.ran);
+
+        @Actor
+        public void actor1() {
+            pool.execute(task);
+        }
+
+        @Actor
+        public void actor2() {
+            pool.cancelAll("stress", false);
+        }
+
+        @Arbiter
+        public void arbiter(I_Result r) {
+            long deadline = System.nanoTime() + WAIT_NANOS;
+            while (counts.ran.get() == 0 && !task.cancelled && System.nanoTime() - deadline < 0) {
+                Thread.yield();
+            }
+            r.r1 = counts.ran.get() > 0 || task.cancelled ? 1 : 0;
+            pool.shutdown();
+        }
+    }
+}